@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.bench;
+
+import io.github.hellorobotics.lib.ChunkGeometry;
+import io.github.hellorobotics.lib.GridAtlas;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load harness replaying a synthetic exploration: robot threads drive through a {@link World}
+ * and write lidar scans with {@link GridAtlas#updateCell(int, int, boolean)}, while planner
+ * threads run A* over {@link GridAtlas.Cell#getAccessibleCells()} from the robots to random goals.
+ * All threads hold the monitor of the atlas while using it, so latencies include the time spent
+ * waiting for writers, which is what planning sees on a robot.
+ * <p>
+ * Options, all given as {@code --name value}:
+ * <pre>
+ *   map        side of the world in cells               (1024)
+ *   chunk      chunk size in cells                      (16)
+ *   layout     row or morton                            (row)
+ *   robots     writer threads                           (2)
+ *   planners   planner threads                          (2)
+ *   rays       rays per scan                            (180)
+ *   range      range of a ray in cells                  (60)
+ *   scan-ms    delay between scans of a robot           (10)
+ *   plan-ms    delay between queries of a planner       (50)
+ *   expand     expansion limit of a query               (20000)
+ *   warmup     seconds run before measuring             (5)
+ *   seconds    seconds measured                         (30)
+ *   seed       seed of the world and the threads        (1)
+ *   out        JSON file written with the results       (bench-result.json)
+ * </pre>
+ */
+public class ExplorationBench {
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private GridAtlas atlas;
+    private World world;
+    private volatile double[][] poses;
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    private ExplorationBench(String[] args) {
+        options.put("map", "1024");
+        options.put("chunk", "16");
+        options.put("layout", "row");
+        options.put("robots", "2");
+        options.put("planners", "2");
+        options.put("rays", "180");
+        options.put("range", "60");
+        options.put("scan-ms", "10");
+        options.put("plan-ms", "50");
+        options.put("expand", "20000");
+        options.put("warmup", "5");
+        options.put("seconds", "30");
+        options.put("seed", "1");
+        options.put("out", "bench-result.json");
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length || !options.containsKey(args[i].substring(2)))
+                throw new IllegalArgumentException("Illegal option: " + args[i]);
+            options.put(args[i].substring(2), args[++i]);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ExplorationBench(args).run();
+    }
+
+    private int integer(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private void run() throws InterruptedException, IOException {
+        int chunk = integer("chunk");
+        atlas = new GridAtlas("morton".equals(options.get("layout")) ? ChunkGeometry.morton(chunk) : ChunkGeometry.of(chunk));
+        world = new World(integer("map"), Long.parseLong(options.get("seed")));
+        int robots = integer("robots");
+        int planners = integer("planners");
+        poses = new double[robots][];
+        Histogram[] scans = new Histogram[robots];
+        Histogram[] plans = new Histogram[planners];
+        long[] found = new long[planners];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < robots; i++) {
+            scans[i] = new Histogram();
+            int id = i;
+            threads.add(new Thread(() -> drive(id, scans[id]), "robot-" + i));
+        }
+        for (int i = 0; i < planners; i++) {
+            plans[i] = new Histogram();
+            int id = i;
+            threads.add(new Thread(() -> found[id] = plan(id, plans[id]), "planner-" + i));
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Histogram pauses = new Histogram();
+        NotificationListener gcListener = (n, handback) -> {
+            if (!measuring || !"com.sun.management.gc.notification".equals(n.getType()))
+                return;
+            CompositeData info = (CompositeData) ((CompositeData) n.getUserData()).get("gcInfo");
+            synchronized (pauses) {
+                pauses.record((Long) info.get("duration"));
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        threads.forEach(Thread::start);
+        Thread.sleep(integer("warmup") * 1000L);
+        long gcCount = 0, gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount -= gc.getCollectionCount();
+            gcTime -= gc.getCollectionTime();
+        }
+        long start = System.nanoTime();
+        measuring = true;
+        Thread.sleep(integer("seconds") * 1000L);
+        measuring = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += gc.getCollectionCount();
+            gcTime += gc.getCollectionTime();
+        }
+        running = false;
+        for (Thread t : threads)
+            t.join();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            if (gc instanceof NotificationEmitter)
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(gcListener);
+                } catch (ListenerNotFoundException ignored) {
+                }
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        Histogram scan = new Histogram();
+        Histogram query = new Histogram();
+        for (Histogram h : scans)
+            scan.add(h);
+        for (Histogram h : plans)
+            query.add(h);
+        long solved = 0;
+        for (long f : found)
+            solved += f;
+
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        String sep = "";
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            json.append(sep).append('"').append(e.getKey()).append("\": \"").append(e.getValue()).append('"');
+            sep = ", ";
+        }
+        json.append("},\n  \"java\": \"").append(System.getProperty("java.version")).append('"');
+        json.append(",\n  \"seconds\": ").append(Histogram.format(elapsed));
+        json.append(",\n  \"scanMicros\": ");
+        scan.toJson(json, 1e3);
+        json.append(",\n  \"planMicros\": ");
+        query.toJson(json, 1e3);
+        json.append(",\n  \"scansPerSecond\": ").append(Histogram.format(scan.getCount() / elapsed));
+        json.append(",\n  \"plansPerSecond\": ").append(Histogram.format(query.getCount() / elapsed));
+        json.append(",\n  \"plansSolved\": ").append(solved);
+        json.append(",\n  \"heap\": {\"beforeBytes\": ").append(heapBefore)
+                .append(", \"afterBytes\": ").append(heapAfter)
+                .append(", \"growthBytes\": ").append(heapAfter - heapBefore).append('}');
+        json.append(",\n  \"gc\": {\"collections\": ").append(gcCount)
+                .append(", \"timeMillis\": ").append(gcTime).append(", \"pauseMillis\": ");
+        pauses.toJson(json, 1);
+        json.append("},\n  \"atlas\": {\"xMin\": ").append(atlas.xMin()).append(", \"xMax\": ").append(atlas.xMax())
+                .append(", \"yMin\": ").append(atlas.yMin()).append(", \"yMax\": ").append(atlas.yMax())
+                .append(", \"version\": ").append(atlas.getVersion()).append("}\n}\n");
+        Files.write(Paths.get(options.get("out")), json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(json);
+    }
+
+    private void drive(int id, Histogram latency) {
+        Random random = new Random(Long.parseLong(options.get("seed")) * 31 + id);
+        double x = world.size / 2.0 + 0.5, y = world.size / 2.0 + 0.5;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        int rays = integer("rays");
+        int range = integer("range");
+        long delay = integer("scan-ms") * 1000000L;
+        while (running) {
+            long t = System.nanoTime();
+            synchronized (atlas) {
+                world.scan(atlas, x, y, rays, range);
+            }
+            t = System.nanoTime() - t;
+            if (measuring)
+                synchronized (latency) {
+                    latency.record(t);
+                }
+            double nx = x + Math.cos(heading);
+            double ny = y + Math.sin(heading);
+            if (world.isOccupied((int) Math.floor(nx), (int) Math.floor(ny)) || random.nextInt(50) == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            } else {
+                x = nx;
+                y = ny;
+            }
+            poses[id] = new double[]{x, y};
+            if (delay > 0)
+                LockSupport.parkNanos(delay);
+        }
+    }
+
+    private long plan(int id, Histogram latency) {
+        Random random = new Random(Long.parseLong(options.get("seed")) * 131 + id);
+        int limit = integer("expand");
+        long delay = integer("plan-ms") * 1000000L;
+        long found = 0;
+        while (running) {
+            double[] pose = poses[random.nextInt(poses.length)];
+            int gx, gy;
+            do {
+                gx = random.nextInt(world.size);
+                gy = random.nextInt(world.size);
+            } while (world.isOccupied(gx, gy));
+            if (pose != null) {
+                long t = System.nanoTime();
+                boolean ok;
+                synchronized (atlas) {
+                    ok = search(atlas.getCell((int) Math.floor(pose[0]), (int) Math.floor(pose[1])), atlas.getCell(gx, gy), limit);
+                }
+                t = System.nanoTime() - t;
+                if (measuring) {
+                    synchronized (latency) {
+                        latency.record(t);
+                    }
+                    if (ok)
+                        found++;
+                }
+            }
+            if (delay > 0)
+                LockSupport.parkNanos(delay);
+        }
+        return found;
+    }
+
+    private static boolean search(GridAtlas.Cell start, GridAtlas.Cell goal, int limit) {
+        HashMap<Long, Double> cost = new HashMap<>();
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        open.add(new Node(start, 0, start.getDistanceTo(goal)));
+        cost.put(key(start), 0.0);
+        int expanded = 0;
+        while (!open.isEmpty() && expanded++ < limit) {
+            Node n = open.poll();
+            if (n.cost > cost.get(key(n.cell)))
+                continue;
+            if (n.cell.getX() == goal.getX() && n.cell.getY() == goal.getY())
+                return true;
+            for (GridAtlas.Cell c : n.cell.getAccessibleCells()) {
+                double g = n.cost + n.cell.getDistanceTo(c);
+                Double old = cost.get(key(c));
+                if (old == null || g < old) {
+                    cost.put(key(c), g);
+                    open.add(new Node(c, g, g + c.getDistanceTo(goal)));
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long key(GridAtlas.Cell c) {
+        return (long) c.getX() << 32 | (c.getY() & 0xFFFFFFFFL);
+    }
+
+    private static class Node implements Comparable<Node> {
+        final GridAtlas.Cell cell;
+        final double cost;
+        final double estimate;
+
+        Node(GridAtlas.Cell cell, double cost, double estimate) {
+            this.cell = cell;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            return Double.compare(estimate, o.estimate);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.bench;
+
+import java.util.Locale;
+
+/**
+ * Log-linear histogram of non-negative longs: exact below 128, then 64 buckets per power of two,
+ * so quantiles are within 1.6% of the recorded values. Not thread safe, merge per thread copies
+ * with {@link #add(Histogram)}.
+ */
+public class Histogram {
+    private static final int LINEAR = 128;
+    private static final int SUB = 64;
+
+    private final long[] counts = new long[LINEAR + 56 * SUB];
+    private long count;
+    private long sum;
+    private long max;
+
+    private static int bucket(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        int shift = 57 - Long.numberOfLeadingZeros(value);
+        return LINEAR + (shift - 1) * SUB + (int) (value >>> shift) - SUB;
+    }
+
+    // The highest value falling in a bucket.
+    private static long highest(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int shift = (bucket - LINEAR) / SUB + 1;
+        long mantissa = (bucket - LINEAR) % SUB + SUB;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     */
+    public long getValueAt(double quantile) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highest(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Writes the summary as a JSON object, with values divided by {@code scale}.
+     */
+    public void toJson(StringBuilder out, double scale) {
+        out.append("{\"count\": ").append(count)
+                .append(", \"mean\": ").append(format(getMean() / scale))
+                .append(", \"p50\": ").append(format(getValueAt(0.5) / scale))
+                .append(", \"p99\": ").append(format(getValueAt(0.99) / scale))
+                .append(", \"p999\": ").append(format(getValueAt(0.999) / scale))
+                .append(", \"max\": ").append(format(max / scale)).append('}');
+    }
+
+    static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.bench;
+
+import io.github.hellorobotics.lib.GridAtlas;
+
+/**
+ * A square synthetic environment: rooms of 64 cells with doors, scattered boxes and an outer
+ * wall. Everything is derived from the seed, so runs with the same seed see the same world.
+ */
+class World {
+    private static final int ROOM = 64;
+    private static final int DOOR = 8;
+    private static final int BOX = 4;
+
+    final int size;
+    private final long seed;
+
+    World(int size, long seed) {
+        this.size = size;
+        this.seed = seed;
+    }
+
+    boolean isOccupied(int x, int y) {
+        if (x <= 0 || y <= 0 || x >= size - 1 || y >= size - 1)
+            return true;
+        int xr = x % ROOM;
+        int yr = y % ROOM;
+        boolean door = Math.abs(xr - ROOM / 2) < DOOR / 2 || Math.abs(yr - ROOM / 2) < DOOR / 2;
+        if ((xr == 0 || yr == 0) && !door)
+            return true;
+        return mix(x / BOX, y / BOX) % 100 < 6 && xr > BOX && yr > BOX;
+    }
+
+    /**
+     * Casts rays around a pose into the atlas: free cells up to the first hit, which is blocked.
+     */
+    void scan(GridAtlas atlas, double x, double y, int rays, int range) {
+        for (int r = 0; r < rays; r++) {
+            double a = 2 * Math.PI * r / rays;
+            double dx = Math.cos(a);
+            double dy = Math.sin(a);
+            for (int i = 1; i <= range; i++) {
+                int cx = (int) Math.floor(x + dx * i);
+                int cy = (int) Math.floor(y + dy * i);
+                if (isOccupied(cx, cy)) {
+                    atlas.updateCell(cx, cy, true);
+                    break;
+                }
+                atlas.updateCell(cx, cy, false);
+            }
+        }
+    }
+
+    private long mix(int x, int y) {
+        long h = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h & Long.MAX_VALUE;
+    }
+}
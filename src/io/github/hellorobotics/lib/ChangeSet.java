@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Changes of a {@link GridAtlas} coalesced between two drains, see {@link GridAtlas#pollChanges()}.
+ */
+public class ChangeSet {
+    private final long epoch;
+    private final boolean expanded;
+    private final int xMin, xMax, yMin, yMax;
+    private final int xMinBefore, xMaxBefore, yMinBefore, yMaxBefore;
+    private final Collection<ChunkChange> chunks;
+
+    ChangeSet(long epoch, boolean expanded, int xMinBefore, int xMaxBefore, int yMinBefore, int yMaxBefore,
+              GridAtlas atlas, Collection<ChunkChange> chunks) {
+        this.epoch = epoch;
+        this.expanded = expanded;
+        this.xMinBefore = xMinBefore;
+        this.xMaxBefore = xMaxBefore;
+        this.yMinBefore = yMinBefore;
+        this.yMaxBefore = yMaxBefore;
+        this.xMin = atlas.xMin();
+        this.xMax = atlas.xMax();
+        this.yMin = atlas.yMin();
+        this.yMax = atlas.yMax();
+        this.chunks = Collections.unmodifiableCollection(chunks);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public boolean isEmpty() {
+        return !expanded && chunks.isEmpty();
+    }
+
+    /**
+     * @return whether the bounds of the atlas changed since the previous epoch, see
+     * {@link #isAdded(int, int)} for the area they gained
+     */
+    public boolean isExpanded() {
+        return expanded;
+    }
+
+    /**
+     * @return whether a cell lies inside the bounds now but was outside at the previous epoch
+     */
+    public boolean isAdded(int x, int y) {
+        return x >= xMin && x <= xMax && y >= yMin && y <= yMax &&
+                (x < xMinBefore || x > xMaxBefore || y < yMinBefore || y > yMaxBefore);
+    }
+
+    public int xMin() {
+        return xMin;
+    }
+
+    public int xMax() {
+        return xMax;
+    }
+
+    public int yMin() {
+        return yMin;
+    }
+
+    public int yMax() {
+        return yMax;
+    }
+
+    /**
+     * @return the minimal x of the bounds at the previous epoch
+     */
+    public int xMinBefore() {
+        return xMinBefore;
+    }
+
+    public int xMaxBefore() {
+        return xMaxBefore;
+    }
+
+    public int yMinBefore() {
+        return yMinBefore;
+    }
+
+    public int yMaxBefore() {
+        return yMaxBefore;
+    }
+
+    public Collection<ChunkChange> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Dirty cells of one chunk. The mask holds one bit per cell, row by row:
+     * bit {@code yRel * chunkSize + xRel}. The range from {@link #xMin()} to {@link #yMax()}
+     * bounds the dirty cells, so a chunk only promoted, e.g. by a layer write, has an empty one
+     * with the minimums above the maximums.
+     */
+    public static class ChunkChange {
+        private final int x;
+        private final int y;
+        private final int chunkSize;
+        private final long[] mask;
+        private boolean promoted;
+        private int count;
+        private int xMinRel, xMaxRel, yMinRel, yMaxRel;
+
+        ChunkChange(int x, int y, int chunkSize) {
+            this.x = x;
+            this.y = y;
+            this.chunkSize = chunkSize;
+            mask = new long[(chunkSize * chunkSize + 63) >>> 6];
+            xMinRel = yMinRel = chunkSize;
+            xMaxRel = yMaxRel = -1;
+        }
+
+        void markCell(int xRel, int yRel) {
+            int i = yRel * chunkSize + xRel;
+            long bit = 1L << i;
+            if ((mask[i >>> 6] & bit) != 0)
+                return;
+            mask[i >>> 6] |= bit;
+            count++;
+            xMinRel = Math.min(xMinRel, xRel);
+            xMaxRel = Math.max(xMaxRel, xRel);
+            yMinRel = Math.min(yMinRel, yRel);
+            yMaxRel = Math.max(yMaxRel, yRel);
+        }
+
+        void markPromoted() {
+            promoted = true;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * @return whether the chunk was promoted from empty to filled storage
+         */
+        public boolean isPromoted() {
+            return promoted;
+        }
+
+        public int getDirtyCount() {
+            return count;
+        }
+
+        public boolean isDirty(int xRel, int yRel) {
+            int i = yRel * chunkSize + xRel;
+            return (mask[i >>> 6] & (1L << i)) != 0;
+        }
+
+        public long[] getMask() {
+            return mask.clone();
+        }
+
+        public int xMin() {
+            return x * chunkSize + xMinRel;
+        }
+
+        public int xMax() {
+            return x * chunkSize + xMaxRel;
+        }
+
+        public int yMin() {
+            return y * chunkSize + yMinRel;
+        }
+
+        public int yMax() {
+            return y * chunkSize + yMaxRel;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Records the changes of an atlas between two drains into a {@link ChangeSet}.
+ */
+class ChangeTracker {
+    private final int chunkSize;
+    private HashMap<Long, ChangeSet.ChunkChange> dirty = new HashMap<>();
+    private ChangeSet.ChunkChange last;
+    private boolean expanded;
+    private long epoch;
+    private int xMin, xMax, yMin, yMax;
+
+    ChangeTracker(GridAtlas atlas) {
+        this.chunkSize = atlas.getChunkSize();
+        recordBounds(atlas);
+    }
+
+    void markCell(int xChunk, int yChunk, int xRel, int yRel) {
+        chunk(xChunk, yChunk).markCell(xRel, yRel);
+    }
+
+    void markPromoted(int xChunk, int yChunk) {
+        chunk(xChunk, yChunk).markPromoted();
+    }
+
+    void markExpanded() {
+        expanded = true;
+    }
+
+    ChangeSet drain(GridAtlas atlas) {
+        ChangeSet ret = new ChangeSet(epoch++, expanded, xMin, xMax, yMin, yMax, atlas, new ArrayList<>(dirty.values()));
+        dirty = new HashMap<>();
+        last = null;
+        expanded = false;
+        recordBounds(atlas);
+        return ret;
+    }
+
+    private void recordBounds(GridAtlas atlas) {
+        xMin = atlas.xMin();
+        xMax = atlas.xMax();
+        yMin = atlas.yMin();
+        yMax = atlas.yMax();
+    }
+
+    private ChangeSet.ChunkChange chunk(int xChunk, int yChunk) {
+        if (last != null && last.getX() == xChunk && last.getY() == yChunk)
+            return last;
+        return last = dirty.computeIfAbsent(GridAtlas.pack(xChunk, yChunk),
+                k -> new ChangeSet.ChunkChange(xChunk, yChunk, chunkSize));
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+/**
+ * Coordinate math of a chunk: which chunk a coordinate falls in, its offset inside the chunk,
+ * and where a cell lives in the flat per-chunk storage. Power of two sizes use shifts and masks,
+ * which floor correctly for negative coordinates.
+ */
+public abstract class ChunkGeometry {
+    final int size;
+    final int cells;
+
+    ChunkGeometry(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Illegal chunk size: " + size);
+        this.size = size;
+        this.cells = size * size;
+    }
+
+    /**
+     * Row-major layout, with shift and mask math when the size is a power of two.
+     */
+    public static ChunkGeometry of(int size) {
+        return isPowerOfTwo(size) ? new RowMajor(size) : new Generic(size);
+    }
+
+    /**
+     * Z-order layout, keeping 2D neighbourhoods close in memory. The size must be a power of two.
+     */
+    public static ChunkGeometry morton(int size) {
+        if (!isPowerOfTwo(size) || size > 1 << 15)
+            throw new IllegalArgumentException("Morton layout needs a power of two size up to 32768: " + size);
+        return new Morton(size);
+    }
+
+    private static boolean isPowerOfTwo(int size) {
+        return size > 0 && (size & (size - 1)) == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cells() {
+        return cells;
+    }
+
+    /**
+     * @return whether cells of the same row are contiguous in storage, in order of x
+     */
+    public boolean isRowMajor() {
+        return false;
+    }
+
+    public abstract int chunkOf(int coordinate);
+
+    public abstract int offsetOf(int coordinate);
+
+    public abstract int index(int xRel, int yRel);
+
+    public abstract int xOf(int index);
+
+    public abstract int yOf(int index);
+
+    static class RowMajor extends ChunkGeometry {
+        private final int shift;
+        private final int mask;
+
+        RowMajor(int size) {
+            super(size);
+            shift = Integer.numberOfTrailingZeros(size);
+            mask = size - 1;
+        }
+
+        @Override
+        public boolean isRowMajor() {
+            return true;
+        }
+
+        @Override
+        public int chunkOf(int coordinate) {
+            return coordinate >> shift;
+        }
+
+        @Override
+        public int offsetOf(int coordinate) {
+            return coordinate & mask;
+        }
+
+        @Override
+        public int index(int xRel, int yRel) {
+            return yRel << shift | xRel;
+        }
+
+        @Override
+        public int xOf(int index) {
+            return index & mask;
+        }
+
+        @Override
+        public int yOf(int index) {
+            return index >>> shift;
+        }
+    }
+
+    static class Morton extends ChunkGeometry {
+        private final int shift;
+        private final int mask;
+        private final int[] spread;
+
+        Morton(int size) {
+            super(size);
+            shift = Integer.numberOfTrailingZeros(size);
+            mask = size - 1;
+            spread = new int[size];
+            for (int i = 0; i < size; i++)
+                spread[i] = spread(i);
+        }
+
+        private static int spread(int v) {
+            v = (v | v << 8) & 0x00FF00FF;
+            v = (v | v << 4) & 0x0F0F0F0F;
+            v = (v | v << 2) & 0x33333333;
+            return (v | v << 1) & 0x55555555;
+        }
+
+        private static int compact(int v) {
+            v &= 0x55555555;
+            v = (v | v >>> 1) & 0x33333333;
+            v = (v | v >>> 2) & 0x0F0F0F0F;
+            v = (v | v >>> 4) & 0x00FF00FF;
+            return (v | v >>> 8) & 0x0000FFFF;
+        }
+
+        @Override
+        public int chunkOf(int coordinate) {
+            return coordinate >> shift;
+        }
+
+        @Override
+        public int offsetOf(int coordinate) {
+            return coordinate & mask;
+        }
+
+        @Override
+        public int index(int xRel, int yRel) {
+            return spread[xRel] | spread[yRel] << 1;
+        }
+
+        @Override
+        public int xOf(int index) {
+            return compact(index);
+        }
+
+        @Override
+        public int yOf(int index) {
+            return compact(index >>> 1);
+        }
+    }
+
+    static class Generic extends ChunkGeometry {
+        Generic(int size) {
+            super(size);
+        }
+
+        @Override
+        public boolean isRowMajor() {
+            return true;
+        }
+
+        @Override
+        public int chunkOf(int coordinate) {
+            return Math.floorDiv(coordinate, size);
+        }
+
+        @Override
+        public int offsetOf(int coordinate) {
+            return Math.floorMod(coordinate, size);
+        }
+
+        @Override
+        public int index(int xRel, int yRel) {
+            return yRel * size + xRel;
+        }
+
+        @Override
+        public int xOf(int index) {
+            return index % size;
+        }
+
+        @Override
+        public int yOf(int index) {
+            return index / size;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Connected components of the free cells of an atlas, 4-connected like
+ * {@link GridAtlas.Cell#getAccessibleCells()}. Every filled chunk is labelled on its own, and a
+ * union-find joins the local components through the border cells of neighbouring chunks. An
+ * empty chunk is a single component.
+ * <p>
+ * Freed cells next to a labelled cell are joined in place. Other changes get their chunk
+ * labelled again at the next query. If the local components and the links across its borders
+ * come out the same, which is the case for most obstacles, nothing else is done. Otherwise the
+ * union-find is rebuilt from the links between chunks, kept for the chunks that did not change.
+ */
+public class Connectivity implements GridAtlas.CellListener {
+    private final GridAtlas atlas;
+    private final ChunkGeometry geometry;
+    private final int size;
+    private final Labels empty;
+    private final HashMap<Long, Labels> labels = new HashMap<>();
+    private final HashMap<Long, long[]> eastLinks = new HashMap<>();
+    private final HashMap<Long, long[]> northLinks = new HashMap<>();
+    private final Set<Long> dirty = new LinkedHashSet<>();
+    private boolean stale = true;
+    private int[] parent = new int[0];
+    private int xMin, xMax, yMin, yMax;
+    private long evictions;
+
+    public Connectivity(GridAtlas atlas) {
+        this.atlas = atlas;
+        this.geometry = atlas.getGeometry();
+        this.size = geometry.size();
+        empty = new Labels(geometry.cells());
+        Arrays.fill(empty.label, 1);
+        empty.count = 1;
+        atlas.forEachStored(c -> dirty.add(GridAtlas.pack(c.getX(), c.getY())));
+        atlas.addCellListener(this);
+    }
+
+    @Override
+    public void onCellChanged(int x, int y, boolean blocked) {
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        long key = GridAtlas.pack(xChunk, yChunk);
+        Labels l = labels.get(key);
+        // Joining is only safe while the labels of all chunks are up to date.
+        if (blocked || stale || l == null || !dirty.isEmpty() || !join(l, xChunk, yChunk, geometry.offsetOf(x), geometry.offsetOf(y)))
+            dirty.add(key);
+    }
+
+    public boolean isReachable(int xFrom, int yFrom, int xTo, int yTo) {
+        int a = componentOf(xFrom, yFrom);
+        return a >= 0 && a == componentOf(xTo, yTo);
+    }
+
+    /**
+     * @return an id shared by all cells of the same component until the next change, or -1 for
+     * blocked cells and cells outside the atlas
+     */
+    public int componentOf(int x, int y) {
+        refresh();
+        int id = node(x, y);
+        return id < 0 ? -1 : find(id);
+    }
+
+    public void detach() {
+        atlas.removeCellListener(this);
+    }
+
+    private void refresh() {
+        // Chunks dropped by a window that moved may come back filled with other cells.
+        if (evictions != atlas.getEvictionCount()) {
+            evictions = atlas.getEvictionCount();
+            labels.clear();
+            eastLinks.clear();
+            northLinks.clear();
+            atlas.forEachStored(c -> dirty.add(GridAtlas.pack(c.getX(), c.getY())));
+            stale = true;
+        }
+        if (xMin != atlas.xMinChunk() || xMax != atlas.xMaxChunk() || yMin != atlas.yMinChunk() || yMax != atlas.yMaxChunk()) {
+            xMin = atlas.xMinChunk();
+            xMax = atlas.xMaxChunk();
+            yMin = atlas.yMinChunk();
+            yMax = atlas.yMaxChunk();
+            stale = true;
+        }
+        Iterator<Long> it = dirty.iterator();
+        while (it.hasNext()) {
+            long k = it.next();
+            it.remove();
+            relabel(GridAtlas.unpackX(k), GridAtlas.unpackY(k));
+        }
+        if (!stale)
+            return;
+        labels.keySet().removeIf(k -> !contains(GridAtlas.unpackX(k), GridAtlas.unpackY(k)));
+        eastLinks.keySet().removeIf(k -> !contains(GridAtlas.unpackX(k), GridAtlas.unpackY(k)));
+        northLinks.keySet().removeIf(k -> !contains(GridAtlas.unpackX(k), GridAtlas.unpackY(k)));
+        int next = (xMax - xMin + 1) * (yMax - yMin + 1);
+        for (Labels l : labels.values()) {
+            l.extraBase = next;
+            next += Math.max(0, l.count - 1);
+        }
+        parent = new int[next];
+        for (int i = 0; i < next; i++)
+            parent[i] = i;
+        for (int i = xMin; i <= xMax; i++) {
+            for (int j = yMin; j <= yMax; j++) {
+                if (i < xMax)
+                    connect(i, j, i + 1, j);
+                if (j < yMax)
+                    connect(i, j, i, j + 1);
+            }
+        }
+        stale = false;
+    }
+
+    private void relabel(int xChunk, int yChunk) {
+        long key = GridAtlas.pack(xChunk, yChunk);
+        GridAtlas.ChunkFilled chunk = contains(xChunk, yChunk) ? atlas.filledChunkAt(xChunk, yChunk) : null;
+        Labels old = labels.get(key);
+        if (chunk != null)
+            chunk.age();
+        Labels now = chunk == null ? null : label(chunk.counters);
+        if (now == null && old == null)
+            return;
+        if (stale || !keepsStructure(xChunk, yChunk, old == null ? empty : old, now == null ? empty : now)) {
+            stale = true;
+            eastLinks.remove(key);
+            eastLinks.remove(GridAtlas.pack(xChunk - 1, yChunk));
+            northLinks.remove(key);
+            northLinks.remove(GridAtlas.pack(xChunk, yChunk - 1));
+        } else if (now != null && old != null) {
+            now.extraBase = old.extraBase;
+        }
+        if (now == null)
+            labels.remove(key);
+        else
+            labels.put(key, now);
+    }
+
+    private Labels label(int[] counters) {
+        Labels l = new Labels(geometry.cells());
+        int[] stack = new int[geometry.cells()];
+        for (int start = 0; start < counters.length; start++) {
+            if (counters[start] != 0 || l.label[start] != 0)
+                continue;
+            int id = ++l.count;
+            int top = 0;
+            stack[top++] = start;
+            l.label[start] = id;
+            while (top > 0) {
+                int i = stack[--top];
+                int xRel = geometry.xOf(i);
+                int yRel = geometry.yOf(i);
+                for (int d = 0; d < 4; d++) {
+                    int xn = xRel + (d == 0 ? 1 : d == 1 ? -1 : 0);
+                    int yn = yRel + (d == 2 ? 1 : d == 3 ? -1 : 0);
+                    if (xn < 0 || yn < 0 || xn >= size || yn >= size)
+                        continue;
+                    int n = geometry.index(xn, yn);
+                    if (counters[n] == 0 && l.label[n] == 0) {
+                        l.label[n] = id;
+                        stack[top++] = n;
+                    }
+                }
+            }
+        }
+        return l;
+    }
+
+    // Renames the new labels after the old ones if they split the cells left free the same way
+    // and link to the neighbours the same way, so that the union-find still holds.
+    private boolean keepsStructure(int xChunk, int yChunk, Labels old, Labels now) {
+        if (now.count != old.count)
+            return false;
+        int[] map = new int[now.count + 1];
+        boolean[] used = new boolean[old.count + 1];
+        for (int i = 0; i < now.label.length; i++) {
+            int n = now.label[i];
+            int o = old.label[i];
+            if (n == 0 || o == 0)
+                continue;
+            if (map[n] == 0) {
+                if (used[o])
+                    return false;
+                map[n] = o;
+                used[o] = true;
+            } else if (map[n] != o) {
+                return false;
+            }
+        }
+        for (int n = 1; n <= now.count; n++)
+            if (map[n] == 0)
+                return false;
+        if (now != empty)
+            for (int i = 0; i < now.label.length; i++)
+                now.label[i] = map[now.label[i]];
+        if (xChunk > xMin) {
+            Labels w = labelsAt(xChunk - 1, yChunk);
+            if (!Arrays.equals(links(w, old, true), links(w, now, true)))
+                return false;
+        }
+        if (xChunk < xMax) {
+            Labels e = labelsAt(xChunk + 1, yChunk);
+            if (!Arrays.equals(links(old, e, true), links(now, e, true)))
+                return false;
+        }
+        if (yChunk > yMin) {
+            Labels s = labelsAt(xChunk, yChunk - 1);
+            if (!Arrays.equals(links(s, old, false), links(s, now, false)))
+                return false;
+        }
+        if (yChunk < yMax) {
+            Labels n = labelsAt(xChunk, yChunk + 1);
+            return Arrays.equals(links(old, n, false), links(now, n, false));
+        }
+        return true;
+    }
+
+    private Labels labelsAt(int xChunk, int yChunk) {
+        Labels ret = labels.get(GridAtlas.pack(xChunk, yChunk));
+        return ret == null ? empty : ret;
+    }
+
+    // Distinct pairs of labels touching across the east or north border of a, sorted.
+    private long[] links(Labels a, Labels b, boolean east) {
+        long[] ret = new long[size];
+        int n = 0;
+        for (int k = 0; k < size; k++) {
+            int la = a.label[east ? geometry.index(size - 1, k) : geometry.index(k, size - 1)];
+            int lb = b.label[east ? geometry.index(0, k) : geometry.index(k, 0)];
+            if (la > 0 && lb > 0)
+                ret[n++] = (long) la << 32 | lb;
+        }
+        Arrays.sort(ret, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++)
+            if (m == 0 || ret[m - 1] != ret[i])
+                ret[m++] = ret[i];
+        return Arrays.copyOf(ret, m);
+    }
+
+    private void connect(int xa, int ya, int xb, int yb) {
+        long ka = GridAtlas.pack(xa, ya);
+        Labels a = labels.get(ka);
+        Labels b = labels.get(GridAtlas.pack(xb, yb));
+        if (a == null && b == null) {
+            union(dense(xa, ya), dense(xb, yb));
+            return;
+        }
+        boolean east = xb > xa;
+        long[] links = (east ? eastLinks : northLinks).computeIfAbsent(ka,
+                k -> links(a == null ? empty : a, b == null ? empty : b, east));
+        for (long link : links)
+            union(id(a, xa, ya, (int) (link >>> 32)), id(b, xb, yb, (int) link));
+    }
+
+    // Labels the freed cell after a neighbour of the same chunk and joins it with all the others.
+    private boolean join(Labels l, int xChunk, int yChunk, int xRel, int yRel) {
+        int own = 0;
+        for (int d = 0; d < 4 && own == 0; d++) {
+            int xn = xRel + (d == 0 ? 1 : d == 1 ? -1 : 0);
+            int yn = yRel + (d == 2 ? 1 : d == 3 ? -1 : 0);
+            if (xn >= 0 && yn >= 0 && xn < size && yn < size)
+                own = l.label[geometry.index(xn, yn)];
+        }
+        if (own == 0)
+            return false;
+        l.label[geometry.index(xRel, yRel)] = own;
+        if (xRel == 0)
+            eastLinks.remove(GridAtlas.pack(xChunk - 1, yChunk));
+        if (xRel == size - 1)
+            eastLinks.remove(GridAtlas.pack(xChunk, yChunk));
+        if (yRel == 0)
+            northLinks.remove(GridAtlas.pack(xChunk, yChunk - 1));
+        if (yRel == size - 1)
+            northLinks.remove(GridAtlas.pack(xChunk, yChunk));
+        int id = id(l, xChunk, yChunk, own);
+        int x = xChunk * size + xRel;
+        int y = yChunk * size + yRel;
+        for (int d = 0; d < 4; d++) {
+            int xn = x + (d == 0 ? 1 : d == 1 ? -1 : 0);
+            int yn = y + (d == 2 ? 1 : d == 3 ? -1 : 0);
+            int n = node(xn, yn);
+            if (n < 0)
+                continue;
+            union(id, n);
+            // A bridge between two local components is only kept by labelling the chunk again.
+            if (n != id && geometry.chunkOf(xn) == xChunk && geometry.chunkOf(yn) == yChunk)
+                dirty.add(GridAtlas.pack(xChunk, yChunk));
+        }
+        return true;
+    }
+
+    private int node(int x, int y) {
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        if (!contains(xChunk, yChunk))
+            return -1;
+        Labels l = labels.get(GridAtlas.pack(xChunk, yChunk));
+        if (l == null)
+            return dense(xChunk, yChunk);
+        int label = l.label[geometry.index(geometry.offsetOf(x), geometry.offsetOf(y))];
+        return label == 0 ? -1 : id(l, xChunk, yChunk, label);
+    }
+
+    private int id(Labels l, int xChunk, int yChunk, int label) {
+        return label == 1 || l == null ? dense(xChunk, yChunk) : l.extraBase + label - 2;
+    }
+
+    private int dense(int xChunk, int yChunk) {
+        return (xChunk - xMin) * (yMax - yMin + 1) + yChunk - yMin;
+    }
+
+    private boolean contains(int xChunk, int yChunk) {
+        return xChunk >= xMin && xChunk <= xMax && yChunk >= yMin && yChunk <= yMax;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a < b)
+            parent[b] = a;
+        else if (b < a)
+            parent[a] = b;
+    }
+
+    private static class Labels {
+        final int[] label;
+        int count;
+        int extraBase;
+
+        Labels(int cells) {
+            label = new int[cells];
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+/**
+ * Extra cost of entering a cell given its counter, see {@link WeightedPlanner}. Penalties are in
+ * straight steps and come on top of the step itself, so a penalty of 1 makes a cell as costly as
+ * two free ones. Negative penalties are taken as 0.
+ */
+@FunctionalInterface
+public interface CostFunction {
+    /**
+     * Every cell not blocked costs the same, giving the shortest paths.
+     */
+    static CostFunction uniform() {
+        return counter -> 0;
+    }
+
+    /**
+     * Adds {@code perCount} for every count of the counter.
+     */
+    static CostFunction linear(double perCount) {
+        return counter -> perCount * counter;
+    }
+
+    double penalty(int counter);
+}
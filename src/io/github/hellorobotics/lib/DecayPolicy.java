@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+/**
+ * Ages a counter by a number of epochs, see {@link GridAtlas#setDecay(DecayPolicy)}.
+ * Implementations should never return more than the counter they are given.
+ */
+@FunctionalInterface
+public interface DecayPolicy {
+    /**
+     * Removes {@code step} from the counter every epoch.
+     */
+    static DecayPolicy linear(int step) {
+        if (step <= 0)
+            throw new IllegalArgumentException("Illegal step: " + step);
+        return (counter, epochs) -> epochs >= counter / step + (counter % step == 0 ? 0 : 1) ? 0 : (int) (counter - step * epochs);
+    }
+
+    /**
+     * Halves the counter every {@code halfLife} epochs.
+     */
+    static DecayPolicy halving(int halfLife) {
+        if (halfLife <= 0)
+            throw new IllegalArgumentException("Illegal half life: " + halfLife);
+        return new DecayPolicy() {
+            @Override
+            public int decay(int counter, long epochs) {
+                return epochs / halfLife >= 31 ? 0 : counter >> (epochs / halfLife);
+            }
+
+            @Override
+            public long period() {
+                return halfLife;
+            }
+        };
+    }
+
+    int decay(int counter, long epochs);
+
+    /**
+     * @return the number of epochs decay is applied by, {@link #decay(int, long)} is only given
+     * multiples of it and the epochs left over are carried to the next time
+     */
+    default long period() {
+        return 1;
+    }
+}
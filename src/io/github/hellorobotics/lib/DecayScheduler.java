@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically runs {@link GridAtlas#compactIdle(long)} on a background thread, which reports the
+ * decay of idle chunks to listeners and drops those left empty. The atlas is not thread safe, so
+ * the task holds the monitor of the atlas, and other threads using the atlas have to synchronize
+ * on it as well.
+ */
+public class DecayScheduler implements AutoCloseable {
+    private final ScheduledExecutorService executor;
+
+    public DecayScheduler(GridAtlas atlas, long idleEpochs, long period, TimeUnit unit) {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "GridAtlas-decay");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            synchronized (atlas) {
+                atlas.compactIdle(idleEpochs);
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+import io.github.hellorobotics.lib.util.RadixQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Cost-to-goal field over the free cells of an atlas, shared by any number of agents. Moves are
+ * 4-connected with unit cost. Costs are kept per chunk in int arrays and computed in rounds:
+ * every active chunk runs a local Dijkstra in parallel from the costs its neighbours had at the
+ * start of the round, and activates the neighbours it improved the border of.
+ * <p>
+ * Cells reported freed by the atlas only activate their own chunk. Cells reported blocked
+ * invalidate the costs higher than their own, which are the only ones that can depend on them,
+ * skipping whole chunks whose costs are all lower.
+ */
+public class FlowField implements GridAtlas.CellListener {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int EAST = 1, WEST = 2, NORTH = 4, SOUTH = 8;
+
+    private final GridAtlas atlas;
+    private final ChunkGeometry geometry;
+    private final int size;
+    private final int xGoal;
+    private final int yGoal;
+    private final HashMap<Long, Field> fields = new HashMap<>();
+    private final Set<Long> blocked = new LinkedHashSet<>();
+    private final Set<Long> freed = new LinkedHashSet<>();
+    private int xMin, xMax, yMin, yMax;
+    private long evictions;
+
+    public FlowField(GridAtlas atlas, int xGoal, int yGoal) {
+        this.atlas = atlas;
+        this.geometry = atlas.getGeometry();
+        this.size = geometry.size();
+        this.xGoal = xGoal;
+        this.yGoal = yGoal;
+        atlas.addCellListener(this);
+        compute();
+    }
+
+    @Override
+    public void onCellChanged(int x, int y, boolean blocked) {
+        long k = GridAtlas.pack(x, y);
+        if (blocked) {
+            this.blocked.add(k);
+            freed.remove(k);
+        } else {
+            freed.add(k);
+            this.blocked.remove(k);
+        }
+    }
+
+    /**
+     * Throws the field away and computes it again from the goal.
+     */
+    public void compute() {
+        fields.clear();
+        blocked.clear();
+        freed.clear();
+        evictions = atlas.getEvictionCount();
+        xMin = atlas.xMinChunk();
+        xMax = atlas.xMaxChunk();
+        yMin = atlas.yMinChunk();
+        yMax = atlas.yMaxChunk();
+        int x = geometry.chunkOf(xGoal);
+        int y = geometry.chunkOf(yGoal);
+        if (contains(x, y)) {
+            Map<Long, Boolean> active = new LinkedHashMap<>();
+            active.put(GridAtlas.pack(x, y), true);
+            propagate(active);
+        }
+    }
+
+    /**
+     * Applies the cell changes reported since the last call. Reads do this on their own.
+     */
+    public void repair() {
+        Map<Long, Boolean> active = new LinkedHashMap<>();
+        if (evictions != atlas.getEvictionCount()) {
+            compute();
+            return;
+        }
+        if (boundsChanged()) {
+            int x0 = xMin, x1 = xMax, y0 = yMin, y1 = yMax;
+            xMin = atlas.xMinChunk();
+            xMax = atlas.xMaxChunk();
+            yMin = atlas.yMinChunk();
+            yMax = atlas.yMaxChunk();
+            for (int j = y0; j <= y1; j++) {
+                activate(active, x0 - 1, j, false);
+                activate(active, x1 + 1, j, false);
+            }
+            for (int i = x0; i <= x1; i++) {
+                activate(active, i, y0 - 1, false);
+                activate(active, i, y1 + 1, false);
+            }
+            // The goal seeds the field once its chunk comes inside.
+            int xg = geometry.chunkOf(xGoal);
+            int yg = geometry.chunkOf(yGoal);
+            if (xg < x0 || xg > x1 || yg < y0 || yg > y1)
+                activate(active, xg, yg, true);
+        }
+        int threshold = UNREACHABLE;
+        for (long k : blocked) {
+            int x = GridAtlas.unpackX(k);
+            int y = GridAtlas.unpackY(k);
+            threshold = Math.min(threshold, getCostRaw(x, y));
+            Field f = fields.get(GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y)));
+            if (f != null)
+                f.cost[geometry.index(geometry.offsetOf(x), geometry.offsetOf(y))] = UNREACHABLE;
+        }
+        if (threshold != UNREACHABLE) {
+            for (Map.Entry<Long, Field> e : fields.entrySet()) {
+                Field f = e.getValue();
+                if (f.max <= threshold)
+                    continue;
+                for (int i = 0; i < f.cost.length; i++)
+                    if (f.cost[i] != UNREACHABLE && f.cost[i] > threshold)
+                        f.cost[i] = UNREACHABLE;
+                f.max = threshold;
+                long k = e.getKey();
+                activate(active, GridAtlas.unpackX(k), GridAtlas.unpackY(k), true);
+                activate(active, GridAtlas.unpackX(k) + 1, GridAtlas.unpackY(k), true);
+                activate(active, GridAtlas.unpackX(k) - 1, GridAtlas.unpackY(k), true);
+                activate(active, GridAtlas.unpackX(k), GridAtlas.unpackY(k) + 1, true);
+                activate(active, GridAtlas.unpackX(k), GridAtlas.unpackY(k) - 1, true);
+            }
+        }
+        for (long k : freed)
+            activate(active, geometry.chunkOf(GridAtlas.unpackX(k)), geometry.chunkOf(GridAtlas.unpackY(k)), true);
+        blocked.clear();
+        freed.clear();
+        if (!active.isEmpty())
+            propagate(active);
+    }
+
+    /**
+     * @return the number of steps to the goal, or {@link #UNREACHABLE}
+     */
+    public int getCost(int x, int y) {
+        if (!blocked.isEmpty() || !freed.isEmpty() || boundsChanged())
+            repair();
+        return getCostRaw(x, y);
+    }
+
+    /**
+     * @return the neighbour to move to from a cell to get closer to the goal, if any
+     */
+    public Optional<Point> nextStep(int x, int y) {
+        int best = getCost(x, y);
+        Point ret = null;
+        int[][] d = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] o : d) {
+            int c = getCostRaw(x + o[0], y + o[1]);
+            if (c < best) {
+                best = c;
+                ret = new Point(x + o[0], y + o[1]);
+            }
+        }
+        return Optional.ofNullable(ret);
+    }
+
+    public void detach() {
+        atlas.removeCellListener(this);
+    }
+
+    private int getCostRaw(int x, int y) {
+        Field f = fields.get(GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y)));
+        return f == null ? UNREACHABLE : f.cost[geometry.index(geometry.offsetOf(x), geometry.offsetOf(y))];
+    }
+
+    private boolean boundsChanged() {
+        return xMin != atlas.xMinChunk() || xMax != atlas.xMaxChunk() || yMin != atlas.yMinChunk() || yMax != atlas.yMaxChunk()
+                || evictions != atlas.getEvictionCount();
+    }
+
+    private boolean contains(int x, int y) {
+        return x >= xMin && x <= xMax && y >= yMin && y <= yMax;
+    }
+
+    private void activate(Map<Long, Boolean> active, int x, int y, boolean full) {
+        if (contains(x, y))
+            active.merge(GridAtlas.pack(x, y), full, Boolean::logicalOr);
+    }
+
+    private void propagate(Map<Long, Boolean> active) {
+        while (!active.isEmpty()) {
+            List<Task> tasks = new ArrayList<>(active.size());
+            for (Map.Entry<Long, Boolean> e : active.entrySet()) {
+                int x = GridAtlas.unpackX(e.getKey());
+                int y = GridAtlas.unpackY(e.getKey());
+                Field f = fields.computeIfAbsent(e.getKey(), k -> new Field(geometry.cells()));
+                tasks.add(new Task(x, y, f, e.getValue(), counters(x, y),
+                        edge(x + 1, y, WEST), edge(x - 1, y, EAST), edge(x, y + 1, SOUTH), edge(x, y - 1, NORTH)));
+            }
+            tasks.parallelStream().forEach(Task::run);
+            active = new LinkedHashMap<>();
+            for (Task t : tasks) {
+                if ((t.improved & EAST) != 0)
+                    activate(active, t.x + 1, t.y, false);
+                if ((t.improved & WEST) != 0)
+                    activate(active, t.x - 1, t.y, false);
+                if ((t.improved & NORTH) != 0)
+                    activate(active, t.x, t.y + 1, false);
+                if ((t.improved & SOUTH) != 0)
+                    activate(active, t.x, t.y - 1, false);
+            }
+        }
+    }
+
+    private int[] counters(int x, int y) {
+        Optional<GridAtlas.Chunk> c = atlas.getChunkAt(x, y);
+        if (!c.isPresent() || !(c.get() instanceof GridAtlas.ChunkFilled))
+            return null;
+        GridAtlas.ChunkFilled f = (GridAtlas.ChunkFilled) c.get();
+        f.age();
+        return f.counters;
+    }
+
+    private int[] edge(int x, int y, int side) {
+        Field f = fields.get(GridAtlas.pack(x, y));
+        if (f == null)
+            return null;
+        int[] ret = new int[size];
+        for (int k = 0; k < size; k++)
+            ret[k] = f.cost[edgeIndex(side, k)];
+        return ret;
+    }
+
+    private int edgeIndex(int side, int k) {
+        switch (side) {
+            case EAST:
+                return geometry.index(size - 1, k);
+            case WEST:
+                return geometry.index(0, k);
+            case NORTH:
+                return geometry.index(k, size - 1);
+            default:
+                return geometry.index(k, 0);
+        }
+    }
+
+    private static class Field {
+        final int[] cost;
+        int max = -1;
+
+        Field(int cells) {
+            cost = new int[cells];
+            Arrays.fill(cost, UNREACHABLE);
+        }
+    }
+
+    private class Task implements Runnable {
+        final int x;
+        final int y;
+        final Field field;
+        final boolean full;
+        final int[] counters;
+        final int[][] inflow;
+        int improved;
+
+        Task(int x, int y, Field field, boolean full, int[] counters, int[] east, int[] west, int[] north, int[] south) {
+            this.x = x;
+            this.y = y;
+            this.field = field;
+            this.full = full;
+            this.counters = counters;
+            this.inflow = new int[][]{east, west, north, south};
+        }
+
+        @Override
+        public void run() {
+            int[] cost = field.cost;
+            RadixQueue queue = new RadixQueue();
+            if (full)
+                for (int i = 0; i < cost.length; i++)
+                    if (cost[i] != UNREACHABLE)
+                        queue.push(cost[i], i);
+            if (geometry.chunkOf(xGoal) == x && geometry.chunkOf(yGoal) == y)
+                relax(queue, geometry.index(geometry.offsetOf(xGoal), geometry.offsetOf(yGoal)), 0, true);
+            int[] sides = {EAST, WEST, NORTH, SOUTH};
+            for (int s = 0; s < 4; s++) {
+                if (inflow[s] == null)
+                    continue;
+                for (int k = 0; k < size; k++)
+                    if (inflow[s][k] != UNREACHABLE)
+                        relax(queue, edgeIndex(sides[s], k), inflow[s][k] + 1, false);
+            }
+            while (!queue.isEmpty()) {
+                long e = queue.pop();
+                int d = RadixQueue.key(e);
+                int i = RadixQueue.value(e);
+                if (d > cost[i])
+                    continue;
+                int xRel = geometry.xOf(i);
+                int yRel = geometry.yOf(i);
+                if (xRel > 0)
+                    relax(queue, geometry.index(xRel - 1, yRel), d + 1, false);
+                if (xRel < size - 1)
+                    relax(queue, geometry.index(xRel + 1, yRel), d + 1, false);
+                if (yRel > 0)
+                    relax(queue, geometry.index(xRel, yRel - 1), d + 1, false);
+                if (yRel < size - 1)
+                    relax(queue, geometry.index(xRel, yRel + 1), d + 1, false);
+            }
+        }
+
+        private void relax(RadixQueue queue, int i, int d, boolean goal) {
+            int[] cost = field.cost;
+            if (d >= cost[i] || !goal && counters != null && counters[i] != 0)
+                return;
+            cost[i] = d;
+            field.max = Math.max(field.max, d);
+            queue.push(d, i);
+            int xRel = geometry.xOf(i);
+            int yRel = geometry.yOf(i);
+            if (xRel == size - 1)
+                improved |= EAST;
+            if (xRel == 0)
+                improved |= WEST;
+            if (yRel == size - 1)
+                improved |= NORTH;
+            if (yRel == 0)
+                improved |= SOUTH;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.FenwickTree;
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Uniform sampling of free cells inside the atlas bounds, without retries and without promoting
+ * chunks. Free counts of chunks are kept in a Fenwick tree per chunk row, under one over the row
+ * totals, and filled chunks keep a bitset of their free cells to select from. A sample costs
+ * O(log chunks) plus a scan of the bitset of one chunk.
+ * <p>
+ * Counts follow {@link GridAtlas.CellListener}. When the bounds grow, only the chunks added are
+ * counted, the trees keep room to grow into like an array list. They are rebuilt when the atlas
+ * drops chunks, see {@link GridAtlas#getEvictionCount()}.
+ */
+public class FreeCellSampler implements GridAtlas.CellListener {
+    private final GridAtlas atlas;
+    private final ChunkGeometry geometry;
+    private final int size;
+    private final HashMap<Long, long[]> free = new HashMap<>();
+    private FenwickTree rows;
+    private FenwickTree[] columns;
+    private boolean stale = true;
+    private int xMin, xMax, yMin, yMax;
+    private int xBase, yBase;
+    private long evictions;
+
+    public FreeCellSampler(GridAtlas atlas) {
+        this.atlas = atlas;
+        this.geometry = atlas.getGeometry();
+        this.size = geometry.size();
+        atlas.addCellListener(this);
+    }
+
+    @Override
+    public void onCellChanged(int x, int y, boolean blocked) {
+        if (stale)
+            return;
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        // Chunks coming inside are counted as they are when the bounds are refreshed.
+        if (!contains(xChunk, yChunk))
+            return;
+        long[] bits = free.computeIfAbsent(GridAtlas.pack(xChunk, yChunk), k -> allFree());
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        if (((bits[i >>> 6] & 1L << i) != 0) != blocked)
+            return;
+        bits[i >>> 6] ^= 1L << i;
+        rows.add(yChunk - yBase, blocked ? -1 : 1);
+        columns[yChunk - yBase].add(xChunk - xBase, blocked ? -1 : 1);
+    }
+
+    public long countFree() {
+        refresh();
+        return rows.sum();
+    }
+
+    /**
+     * @return a free cell of the atlas drawn uniformly, or empty if there is none
+     */
+    public Optional<Point> sampleFree(Random random) {
+        refresh();
+        long total = rows.sum();
+        if (total == 0)
+            return Optional.empty();
+        long r = nextLong(random, total);
+        int row = rows.find(r);
+        r -= rows.prefix(row);
+        int column = columns[row].find(r);
+        r -= columns[row].prefix(column);
+        return Optional.of(select(column + xBase, row + yBase, r));
+    }
+
+    /**
+     * Samples among the free cells of the window from {@code (x, y)} of the given size. Chunks
+     * covered entirely are weighted by their rows, those on the border of the window are scanned,
+     * so a sample costs O(rows * log columns) plus the cells of the border chunks in the window.
+     *
+     * @return a free cell of the window drawn uniformly, or empty if there is none
+     */
+    public Optional<Point> sampleFree(Random random, int x, int y, int width, int height) {
+        refresh();
+        int x0 = Math.max(x, xMin * size);
+        int x1 = Math.min(x + width - 1, xMax * size + size - 1);
+        int y0 = Math.max(y, yMin * size);
+        int y1 = Math.min(y + height - 1, yMax * size + size - 1);
+        if (x0 > x1 || y0 > y1)
+            return Optional.empty();
+        int cx0 = geometry.chunkOf(x0);
+        int cx1 = geometry.chunkOf(x1);
+        int fx0 = geometry.offsetOf(x0) == 0 ? cx0 : cx0 + 1;
+        int fx1 = geometry.offsetOf(x1) == size - 1 ? cx1 : cx1 - 1;
+        int fy0 = geometry.offsetOf(y0) == 0 ? geometry.chunkOf(y0) : geometry.chunkOf(y0) + 1;
+        int fy1 = geometry.offsetOf(y1) == size - 1 ? geometry.chunkOf(y1) : geometry.chunkOf(y1) - 1;
+        List<Piece> pieces = new ArrayList<>();
+        long total = 0;
+        for (int j = geometry.chunkOf(y0); j <= geometry.chunkOf(y1); j++) {
+            boolean fullRow = j >= fy0 && j <= fy1;
+            for (int i = cx0; i <= cx1; i++) {
+                Piece p;
+                if (fullRow && i >= fx0 && i <= fx1) {
+                    FenwickTree t = columns[j - yBase];
+                    p = new Piece(fx0, j, true, t.prefix(fx1 + 1 - xBase) - t.prefix(fx0 - xBase));
+                    i = fx1;
+                } else {
+                    p = new Piece(i, j, false, scan(i, j, x0, y0, x1, y1, -1).count);
+                }
+                pieces.add(p);
+                total += p.weight;
+            }
+        }
+        if (total == 0)
+            return Optional.empty();
+        long r = nextLong(random, total);
+        for (Piece p : pieces) {
+            if (r >= p.weight) {
+                r -= p.weight;
+                continue;
+            }
+            if (!p.full)
+                return Optional.of(scan(p.from, p.row, x0, y0, x1, y1, r).found);
+            FenwickTree t = columns[p.row - yBase];
+            r += t.prefix(p.from - xBase);
+            int column = t.find(r);
+            return Optional.of(select(column + xBase, p.row, r - t.prefix(column)));
+        }
+        throw new IllegalStateException("Internal error");
+    }
+
+    public void detach() {
+        atlas.removeCellListener(this);
+    }
+
+    private void refresh() {
+        if (evictions != atlas.getEvictionCount()) {
+            evictions = atlas.getEvictionCount();
+            stale = true;
+        }
+        int x0 = atlas.xMinChunk(), x1 = atlas.xMaxChunk(), y0 = atlas.yMinChunk(), y1 = atlas.yMaxChunk();
+        if (!stale && (x0 != xMin || x1 != xMax || y0 != yMin || y1 != yMax)) {
+            if (x0 > xMin || x1 < xMax || y0 > yMin || y1 < yMax)
+                stale = true;
+            else
+                grow(x0, x1, y0, y1);
+        }
+        if (stale)
+            rebuild(x0, x1, y0, y1);
+    }
+
+    private void rebuild(int x0, int x1, int y0, int y1) {
+        xMin = xBase = x0;
+        xMax = x1;
+        yMin = yBase = y0;
+        yMax = y1;
+        long[][] counts = new long[y1 - y0 + 1][x1 - x0 + 1];
+        for (long[] row : counts)
+            Arrays.fill(row, geometry.cells());
+        free.clear();
+        atlas.forEachStored(c -> {
+            if (c instanceof GridAtlas.ChunkFilled && contains(c.getX(), c.getY()))
+                counts[c.getY() - yBase][c.getX() - xBase] = count((GridAtlas.ChunkFilled) c);
+        });
+        build(counts);
+        stale = false;
+    }
+
+    // Counts the chunks added around the old bounds, after making room for them if needed.
+    private void grow(int x0, int x1, int y0, int y1) {
+        if (x0 < xBase || x1 >= xBase + columns[0].size() || y0 < yBase || y1 >= yBase + columns.length) {
+            int width = x1 - x0 + 1;
+            int height = y1 - y0 + 1;
+            int xb = x0 < xBase ? x0 - width : xBase;
+            int yb = y0 < yBase ? y0 - height : yBase;
+            int xe = x1 >= xBase + columns[0].size() ? x1 + width : xBase + columns[0].size() - 1;
+            int ye = y1 >= yBase + columns.length ? y1 + height : yBase + columns.length - 1;
+            long[][] counts = new long[ye - yb + 1][xe - xb + 1];
+            for (int j = yMin; j <= yMax; j++) {
+                FenwickTree t = columns[j - yBase];
+                for (int i = xMin; i <= xMax; i++)
+                    counts[j - yb][i - xb] = t.prefix(i - xBase + 1) - t.prefix(i - xBase);
+            }
+            xBase = xb;
+            yBase = yb;
+            build(counts);
+        }
+        int xa = xMin, xz = xMax, ya = yMin, yz = yMax;
+        xMin = x0;
+        xMax = x1;
+        yMin = y0;
+        yMax = y1;
+        add(x0, x1, y0, ya - 1);
+        add(x0, x1, yz + 1, y1);
+        add(x0, xa - 1, ya, yz);
+        add(xz + 1, x1, ya, yz);
+    }
+
+    private void add(int x0, int x1, int y0, int y1) {
+        for (int j = y0; j <= y1; j++) {
+            for (int i = x0; i <= x1; i++) {
+                GridAtlas.ChunkFilled c = atlas.filledChunkAt(i, j);
+                long n = c == null ? geometry.cells() : count(c);
+                rows.add(j - yBase, n);
+                columns[j - yBase].add(i - xBase, n);
+            }
+        }
+    }
+
+    private void build(long[][] counts) {
+        long[] totals = new long[counts.length];
+        columns = new FenwickTree[counts.length];
+        for (int j = 0; j < counts.length; j++) {
+            columns[j] = new FenwickTree(counts[j]);
+            totals[j] = columns[j].sum();
+        }
+        rows = new FenwickTree(totals);
+    }
+
+    // Keeps the free cells of a chunk, and counts them.
+    private int count(GridAtlas.ChunkFilled chunk) {
+        chunk.age();
+        long[] bits = new long[(geometry.cells() + 63) >>> 6];
+        int n = 0;
+        for (int i = 0; i < chunk.counters.length; i++) {
+            if (chunk.counters[i] == 0) {
+                bits[i >>> 6] |= 1L << i;
+                n++;
+            }
+        }
+        free.put(GridAtlas.pack(chunk.getX(), chunk.getY()), bits);
+        return n;
+    }
+
+    private long[] allFree() {
+        long[] bits = new long[(geometry.cells() + 63) >>> 6];
+        Arrays.fill(bits, -1L);
+        if ((geometry.cells() & 63) != 0)
+            bits[bits.length - 1] = (1L << geometry.cells()) - 1;
+        return bits;
+    }
+
+    // The k-th free cell of a chunk in storage order, with rank by word.
+    private Point select(int xChunk, int yChunk, long k) {
+        long[] bits = free.get(GridAtlas.pack(xChunk, yChunk));
+        int index = (int) k;
+        if (bits != null) {
+            int w = 0;
+            while (Long.bitCount(bits[w]) <= k)
+                k -= Long.bitCount(bits[w++]);
+            long word = bits[w];
+            for (; k > 0; k--)
+                word &= word - 1;
+            index = w << 6 | Long.numberOfTrailingZeros(word);
+        }
+        return new Point(xChunk * size + geometry.xOf(index), yChunk * size + geometry.yOf(index));
+    }
+
+    // Counts the free cells of a chunk inside the window, and finds the k-th of them if k >= 0.
+    private Scan scan(int xChunk, int yChunk, int x0, int y0, int x1, int y1, long k) {
+        long[] bits = free.get(GridAtlas.pack(xChunk, yChunk));
+        Scan s = new Scan();
+        for (int y = Math.max(y0, yChunk * size); y <= Math.min(y1, yChunk * size + size - 1); y++) {
+            for (int x = Math.max(x0, xChunk * size); x <= Math.min(x1, xChunk * size + size - 1); x++) {
+                int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+                if (bits != null && (bits[i >>> 6] & 1L << i) == 0)
+                    continue;
+                if (s.count++ == k) {
+                    s.found = new Point(x, y);
+                    return s;
+                }
+            }
+        }
+        return s;
+    }
+
+    private boolean contains(int xChunk, int yChunk) {
+        return xChunk >= xMin && xChunk <= xMax && yChunk >= yMin && yChunk <= yMax;
+    }
+
+    private static long nextLong(Random random, long bound) {
+        if (bound <= Integer.MAX_VALUE)
+            return random.nextInt((int) bound);
+        long bits, value;
+        do {
+            bits = random.nextLong() >>> 1;
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    private static class Piece {
+        final int from, row;
+        final boolean full;
+        final long weight;
+
+        Piece(int from, int row, boolean full, long weight) {
+            this.from = from;
+            this.row = row;
+            this.full = full;
+            this.weight = weight;
+        }
+    }
+
+    private static class Scan {
+        long count;
+        Point found;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Frontier cells of an atlas: observed free cells with a 4-neighbour never observed. A cell is
+ * observed once passed to {@link GridAtlas#updateCell(int, int, boolean)} or once its counter
+ * changes otherwise, so empty chunks and cells outside the bounds are unexplored until then.
+ * <p>
+ * The atlas reports every touched cell, and the cells around it are evaluated again at the next
+ * query, so queries cost time in the number of cells touched since the previous one. Observed and
+ * frontier cells are kept as bitsets per chunk.
+ */
+public class FrontierIndex {
+    private final GridAtlas atlas;
+    private final ChunkGeometry geometry;
+    private final int size;
+    private final HashMap<Long, long[]> observed = new HashMap<>();
+    private final HashMap<Long, long[]> frontier = new HashMap<>();
+    private final HashMap<Long, Integer> counts = new HashMap<>();
+    private final Set<Long> pending = new LinkedHashSet<>();
+    private List<Region> regions;
+    private int total;
+
+    /**
+     * Cells with a counter are observed already, free cells the atlas was told about before are
+     * not known.
+     */
+    FrontierIndex(GridAtlas atlas) {
+        this.atlas = atlas;
+        this.geometry = atlas.getGeometry();
+        this.size = geometry.size();
+        atlas.forEachStored(c -> {
+            if (!(c instanceof GridAtlas.ChunkFilled))
+                return;
+            ((GridAtlas.ChunkFilled) c).age();
+            int[] counters = ((GridAtlas.ChunkFilled) c).counters;
+            for (int i = 0; i < counters.length; i++)
+                if (counters[i] != 0)
+                    observe(c.getX() * size + geometry.xOf(i), c.getY() * size + geometry.yOf(i));
+        });
+    }
+
+    void observe(int x, int y) {
+        long key = GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y));
+        long[] bits = observed.computeIfAbsent(key, k -> new long[(geometry.cells() + 63) >>> 6]);
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        pending.add(GridAtlas.pack(x, y));
+        if ((bits[i >>> 6] & 1L << i) != 0)
+            return;
+        bits[i >>> 6] |= 1L << i;
+        pending.add(GridAtlas.pack(x + 1, y));
+        pending.add(GridAtlas.pack(x - 1, y));
+        pending.add(GridAtlas.pack(x, y + 1));
+        pending.add(GridAtlas.pack(x, y - 1));
+    }
+
+    // Forgets the chunks outside the given ones. Cells next to them become unexplored at the edge.
+    void retain(int xMin, int xMax, int yMin, int yMax) {
+        Iterator<Long> it = observed.keySet().iterator();
+        while (it.hasNext()) {
+            long key = it.next();
+            int xChunk = GridAtlas.unpackX(key);
+            int yChunk = GridAtlas.unpackY(key);
+            if (xChunk >= xMin && xChunk <= xMax && yChunk >= yMin && yChunk <= yMax)
+                continue;
+            it.remove();
+            Integer n = counts.remove(key);
+            if (n != null) {
+                frontier.remove(key);
+                total -= n;
+                regions = null;
+            }
+            for (int k = 0; k < size; k++) {
+                pending.add(GridAtlas.pack(xChunk * size - 1, yChunk * size + k));
+                pending.add(GridAtlas.pack(xChunk * size + size, yChunk * size + k));
+                pending.add(GridAtlas.pack(xChunk * size + k, yChunk * size - 1));
+                pending.add(GridAtlas.pack(xChunk * size + k, yChunk * size + size));
+            }
+        }
+        pending.removeIf(cell -> !isObserved(GridAtlas.unpackX(cell), GridAtlas.unpackY(cell)));
+    }
+
+    public boolean isObserved(int x, int y) {
+        long[] bits = observed.get(GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y)));
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        return bits != null && (bits[i >>> 6] & 1L << i) != 0;
+    }
+
+    public boolean isFrontier(int x, int y) {
+        refresh();
+        return test(frontier.get(GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y))), x, y);
+    }
+
+    public int size() {
+        refresh();
+        return total;
+    }
+
+    /**
+     * @return the frontier cell closest to {@code (x, y)}, or empty if there is none
+     */
+    public Optional<Point> nearest(int x, int y) {
+        refresh();
+        Point best = null;
+        long bestDist = Long.MAX_VALUE;
+        for (Map.Entry<Long, long[]> e : frontier.entrySet()) {
+            int xChunk = GridAtlas.unpackX(e.getKey());
+            int yChunk = GridAtlas.unpackY(e.getKey());
+            long dx = Math.max(0, Math.max(xChunk * size - (long) x, x - (xChunk * size + size - 1L)));
+            long dy = Math.max(0, Math.max(yChunk * size - (long) y, y - (yChunk * size + size - 1L)));
+            if (dx * dx + dy * dy >= bestDist)
+                continue;
+            long[] bits = e.getValue();
+            for (int w = 0; w < bits.length; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    int i = w << 6 | Long.numberOfTrailingZeros(word);
+                    int xc = xChunk * size + geometry.xOf(i);
+                    int yc = yChunk * size + geometry.yOf(i);
+                    long d = (long) (xc - x) * (xc - x) + (long) (yc - y) * (yc - y);
+                    if (d < bestDist) {
+                        bestDist = d;
+                        best = new Point(xc, yc);
+                    }
+                }
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * @return the frontier split in 8-connected regions, largest first
+     */
+    public List<Region> getRegions() {
+        refresh();
+        if (regions != null)
+            return regions;
+        HashMap<Long, long[]> left = new HashMap<>();
+        frontier.forEach((k, v) -> left.put(k, v.clone()));
+        List<Region> ret = new ArrayList<>();
+        ArrayDeque<Point> queue = new ArrayDeque<>();
+        for (Map.Entry<Long, long[]> e : frontier.entrySet()) {
+            long[] bits = left.get(e.getKey());
+            for (int w = 0; w < bits.length; w++) {
+                while (bits[w] != 0) {
+                    int i = w << 6 | Long.numberOfTrailingZeros(bits[w]);
+                    Point start = new Point(GridAtlas.unpackX(e.getKey()) * size + geometry.xOf(i),
+                            GridAtlas.unpackY(e.getKey()) * size + geometry.yOf(i));
+                    take(left, start.getX(), start.getY());
+                    List<Point> cells = new ArrayList<>();
+                    queue.add(start);
+                    while (!queue.isEmpty()) {
+                        Point p = queue.poll();
+                        cells.add(p);
+                        for (int dx = -1; dx <= 1; dx++)
+                            for (int dy = -1; dy <= 1; dy++)
+                                if (take(left, p.getX() + dx, p.getY() + dy))
+                                    queue.add(new Point(p.getX() + dx, p.getY() + dy));
+                    }
+                    ret.add(new Region(cells));
+                }
+            }
+        }
+        ret.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        regions = Collections.unmodifiableList(ret);
+        return regions;
+    }
+
+    private boolean take(HashMap<Long, long[]> bitsets, int x, int y) {
+        long[] bits = bitsets.get(GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y)));
+        if (!test(bits, x, y))
+            return false;
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        bits[i >>> 6] &= ~(1L << i);
+        return true;
+    }
+
+    private boolean test(long[] bits, int x, int y) {
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        return bits != null && (bits[i >>> 6] & 1L << i) != 0;
+    }
+
+    private void refresh() {
+        for (long cell : pending) {
+            int x = GridAtlas.unpackX(cell);
+            int y = GridAtlas.unpackY(cell);
+            set(x, y, isObserved(x, y) && atlas.getCounterAt(x, y) == 0 && (!isObserved(x + 1, y)
+                    || !isObserved(x - 1, y) || !isObserved(x, y + 1) || !isObserved(x, y - 1)));
+        }
+        pending.clear();
+    }
+
+    private void set(int x, int y, boolean value) {
+        long key = GridAtlas.pack(geometry.chunkOf(x), geometry.chunkOf(y));
+        long[] bits = frontier.get(key);
+        if (test(bits, x, y) == value)
+            return;
+        if (bits == null) {
+            bits = new long[(geometry.cells() + 63) >>> 6];
+            frontier.put(key, bits);
+        }
+        int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        bits[i >>> 6] ^= 1L << i;
+        int n = counts.getOrDefault(key, 0) + (value ? 1 : -1);
+        if (n == 0) {
+            frontier.remove(key);
+            counts.remove(key);
+        } else {
+            counts.put(key, n);
+        }
+        total += value ? 1 : -1;
+        regions = null;
+    }
+
+    /**
+     * A connected group of frontier cells.
+     */
+    public static class Region {
+        private final List<Point> cells;
+
+        Region(List<Point> cells) {
+            this.cells = Collections.unmodifiableList(cells);
+        }
+
+        public List<Point> getCells() {
+            return cells;
+        }
+
+        public int size() {
+            return cells.size();
+        }
+
+        /**
+         * @return the cell of the region closest to its mean position
+         */
+        public Point getCentroid() {
+            double xMean = 0, yMean = 0;
+            for (Point p : cells) {
+                xMean += p.getX();
+                yMean += p.getY();
+            }
+            xMean /= cells.size();
+            yMean /= cells.size();
+            Point ret = cells.get(0);
+            double best = Double.MAX_VALUE;
+            for (Point p : cells) {
+                double d = (p.getX() - xMean) * (p.getX() - xMean) + (p.getY() - yMean) * (p.getY() - yMean);
+                if (d < best) {
+                    best = d;
+                    ret = p;
+                }
+            }
+            return ret;
+        }
+    }
+}
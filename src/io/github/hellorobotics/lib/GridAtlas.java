@@ -17,13 +17,17 @@ package io.github.hellorobotics.lib;
 
 import io.github.hellorobotics.lib.util.ArraySection;
 import io.github.hellorobotics.lib.util.Section;
-import io.github.hellorobotics.lib.util.SectionIterator;
-import io.github.hellorobotics.lib.util.Single;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Author: Towdium
@@ -31,34 +35,52 @@ import java.util.Optional;
  */
 public class GridAtlas {
     private int chunkSize;
+    private ChunkGeometry geometry;
     private Section<Section<Chunk>> chunks;
+    private int xMinChunk, xMaxChunk, yMinChunk, yMaxChunk;
+    private List<CellListener> listeners = new ArrayList<>();
+    private List<ChangeListener> changeListeners = new ArrayList<>();
+    private ChangeTracker tracker;
+    private ChangeTracker publishTracker;
+    private FrontierIndex frontiers;
+    private long version;
+    private long evictions;
+    private DecayPolicy decay;
+    private long epoch;
+    private List<Layer> layers = new ArrayList<>();
 
     public GridAtlas(int chunkSize) {
-        this.chunkSize = chunkSize;
+        this(ChunkGeometry.of(chunkSize));
+    }
+
+    public GridAtlas(ChunkGeometry geometry) {
+        this.geometry = geometry;
+        this.chunkSize = geometry.size();
         chunks = new ArraySection<>();
-        ArraySection<Chunk> row = new ArraySection<>();
-        row.add(new ChunkEmpty(0, 0));
-        chunks.add(row);
     }
 
     protected static int divFlr(int a, int b) {
         return a >= 0 ? a / b : (a + 1) / b - 1;
     }
 
+    protected static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    protected static int unpackX(long key) {
+        return (int) (key >> 32);
+    }
+
+    protected static int unpackY(long key) {
+        return (int) key;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the atlas can not grow to cover the cell, e.g. outside
+     *                                   the window of a {@link RollingGridAtlas}
+     */
     public Cell getCell(int x, int y) {
-        expandTo(x, y);
-        Single<ChunkFilled> c = new Single<>();
-        Single<Cell> e = new Single<>();
-        int xChunk = divFlr(x, chunkSize);
-        int yChunk = divFlr(y, chunkSize);
-        getChunkAt(xChunk, yChunk).ifPresent((value) -> c.push(value.generate()));
-        c.getValue().ifPresent(chunk -> setChunkAt(xChunk, yChunk, chunk));
-        c.getValue().ifPresent(chunk -> e.push(chunk.getCell(x, y)));
-        Optional<Cell> oe = e.getValue();
-        if (oe.isPresent())
-            return oe.get();
-        else
-            throw new IllegalStateException("Internal error.");
+        return getFilledChunk(x, y).getCell(x, y);
     }
 
     public int xMin() {
@@ -79,25 +101,477 @@ public class GridAtlas {
 
     public void updateCell(int x, int y, boolean up) {
         expandTo(x, y);
-        int xChunk = divFlr(x, chunkSize);
-        int yChunk = divFlr(y, chunkSize);
-        getChunkAt(xChunk, yChunk).ifPresent(chunk -> setChunkAt(xChunk, yChunk, chunk.updateCell(x, y, up)));
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        getChunkAt(xChunk, yChunk).ifPresent(chunk -> {
+            Chunk ret = chunk.updateCell(x, y, up);
+            if (ret != chunk)
+                setChunkAt(xChunk, yChunk, ret);
+            if (frontiers != null)
+                frontiers.observe(x, y);
+        });
+    }
+
+    /**
+     * Combines the counters of another atlas into this one, with cell {@code (x, y)} of
+     * {@code other} landing on {@code (x + dx, y + dy)}. This atlas is grown to cover the other
+     * one first, then destination chunks are merged in parallel.
+     */
+    public void merge(GridAtlas other, int dx, int dy, MergePolicy policy) {
+        if (other.chunkSize != chunkSize || other.geometry.getClass() != geometry.getClass())
+            throw new IllegalArgumentException("Chunk geometry mismatch.");
+        expandTo(other.xMin() + dx, other.yMin() + dy);
+        expandTo(other.xMax() + dx, other.yMax() + dy);
+        Set<Long> keys = new LinkedHashSet<>();
+        if (policy.isZeroIdentity()) {
+            other.forEachStored(c -> {
+                if (c instanceof ChunkFilled)
+                    for (int i = geometry.chunkOf(c.getX() * chunkSize + dx); i <= geometry.chunkOf((c.getX() + 1) * chunkSize - 1 + dx); i++)
+                        for (int j = geometry.chunkOf(c.getY() * chunkSize + dy); j <= geometry.chunkOf((c.getY() + 1) * chunkSize - 1 + dy); j++)
+                            keys.add(pack(i, j));
+            });
+        } else {
+            for (int i = geometry.chunkOf(other.xMin() + dx); i <= geometry.chunkOf(other.xMax() + dx); i++)
+                for (int j = geometry.chunkOf(other.yMin() + dy); j <= geometry.chunkOf(other.yMax() + dy); j++)
+                    keys.add(pack(i, j));
+        }
+        other.forEachStored(c -> {
+            if (c instanceof ChunkFilled)
+                ((ChunkFilled) c).age();
+        });
+        for (long k : keys)
+            getChunkAt(unpackX(k), unpackY(k)).ifPresent(c -> {
+                if (c instanceof ChunkFilled)
+                    ((ChunkFilled) c).settle();
+            });
+        boolean record = tracker != null || publishTracker != null || !listeners.isEmpty();
+        List<MergeResult> results = keys.parallelStream()
+                .map(k -> mergeChunk(other, unpackX(k), unpackY(k), dx, dy, policy, record))
+                .filter(Objects::nonNull).collect(Collectors.toList());
+        for (MergeResult r : results) {
+            ChunkFilled c = r.chunk.generate();
+            c.counters = r.counters;
+            c.version = ++version;
+            c.touchedEpoch = epoch;
+            if (c != r.chunk)
+                setChunkAt(c.getX(), c.getY(), c);
+            if (record) {
+                for (int i = 0; i < r.size; i++) {
+                    int cell = r.cells[i];
+                    int x = r.chunk.getX() * chunkSize + geometry.xOf(cell >>> 1);
+                    int y = r.chunk.getY() * chunkSize + geometry.yOf(cell >>> 1);
+                    markDirty(x, y);
+                    if ((cell & 1) != 0)
+                        notifyCellChanged(x, y, r.counters[cell >>> 1] > 0);
+                }
+            }
+        }
+    }
+
+    private MergeResult mergeChunk(GridAtlas other, int xChunk, int yChunk, int dx, int dy, MergePolicy policy, boolean record) {
+        int xDest = xChunk * chunkSize;
+        int yDest = yChunk * chunkSize;
+        Optional<Chunk> dest = getChunkAt(xChunk, yChunk);
+        if (!dest.isPresent())
+            return null;
+        int[] old = dest.get() instanceof ChunkFilled ? ((ChunkFilled) dest.get()).counters : null;
+        int[] ret = null;
+        for (int i = geometry.chunkOf(xDest - dx); i <= geometry.chunkOf(xDest + chunkSize - 1 - dx); i++) {
+            for (int j = geometry.chunkOf(yDest - dy); j <= geometry.chunkOf(yDest + chunkSize - 1 - dy); j++) {
+                Optional<Chunk> src = other.getChunkAt(i, j);
+                if (!src.isPresent() || src.get() instanceof ChunkEmpty && policy.isZeroIdentity())
+                    continue;
+                int[] from = src.get() instanceof ChunkFilled ? ((ChunkFilled) src.get()).counters : null;
+                if (ret == null)
+                    ret = old == null ? new int[geometry.cells()] : old.clone();
+                int xLo = Math.max(xDest, i * chunkSize + dx);
+                int xHi = Math.min(xDest + chunkSize, (i + 1) * chunkSize + dx);
+                int yLo = Math.max(yDest, j * chunkSize + dy);
+                int yHi = Math.min(yDest + chunkSize, (j + 1) * chunkSize + dy);
+                int xSrc = xLo - dx - i * chunkSize;
+                int len = xHi - xLo;
+                if (from != null && dx % chunkSize == 0 && dy % chunkSize == 0 && old == null && policy.isZeroIdentity()) {
+                    System.arraycopy(from, 0, ret, 0, from.length);
+                    continue;
+                }
+                for (int y = yLo; y < yHi; y++) {
+                    int to = geometry.index(xLo - xDest, y - yDest);
+                    int at = geometry.index(xSrc, y - dy - j * chunkSize);
+                    if (!geometry.isRowMajor()) {
+                        for (int k = 0; k < len; k++) {
+                            int n = geometry.index(xLo - xDest + k, y - yDest);
+                            ret[n] = policy.merge(ret[n], from == null ? 0 : from[geometry.index(xSrc + k, y - dy - j * chunkSize)]);
+                        }
+                    } else if (from == null) {
+                        for (int k = 0; k < len; k++)
+                            ret[to + k] = policy.merge(ret[to + k], 0);
+                    } else if (old == null && policy.isZeroIdentity()) {
+                        System.arraycopy(from, at, ret, to, len);
+                    } else {
+                        for (int k = 0; k < len; k++)
+                            ret[to + k] = policy.merge(ret[to + k], from[at + k]);
+                    }
+                }
+            }
+        }
+        if (ret == null)
+            return null;
+        MergeResult r = new MergeResult(dest.get(), ret, record ? geometry.cells() : 0);
+        boolean changed = false;
+        for (int i = 0; i < ret.length; i++) {
+            int before = old == null ? 0 : old[i];
+            if (before != ret[i]) {
+                changed = true;
+                if (record)
+                    r.cells[r.size++] = i << 1 | ((before == 0) != (ret[i] == 0) ? 1 : 0);
+            }
+        }
+        return changed ? r : null;
+    }
+
+    public void addCellListener(CellListener l) {
+        listeners.add(l);
+    }
+
+    public void removeCellListener(CellListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Starts or stops recording dirty chunks and cells for {@link #pollChanges()}.
+     * Stopping discards the changes not yet polled.
+     */
+    public void setTrackChanges(boolean track) {
+        if (!track)
+            tracker = null;
+        else if (tracker == null)
+            tracker = new ChangeTracker(this);
+    }
+
+    public boolean isTrackingChanges() {
+        return tracker != null;
+    }
+
+    /**
+     * Starts or stops maintaining the frontier index, see {@link FrontierIndex}.
+     */
+    public void setTrackFrontiers(boolean track) {
+        if (!track)
+            frontiers = null;
+        else if (frontiers == null)
+            frontiers = new FrontierIndex(this);
+    }
+
+    public boolean isTrackingFrontiers() {
+        return frontiers != null;
+    }
+
+    public FrontierIndex getFrontiers() {
+        if (frontiers == null)
+            throw new IllegalStateException("Frontier tracking is not enabled.");
+        return frontiers;
+    }
+
+    /**
+     * Drains the changes recorded since the previous call. Nothing is recorded unless tracking
+     * has been enabled by {@link #setTrackChanges(boolean)}. The changes published to change
+     * listeners are recorded apart, so polling does not take them away.
+     */
+    public ChangeSet pollChanges() {
+        return drain(tracker);
+    }
+
+    /**
+     * Drains the changes recorded for change listeners since the previous call and hands them to
+     * every listener as one batch.
+     */
+    public ChangeSet publishChanges() {
+        ChangeSet ret = drain(publishTracker);
+        if (!ret.isEmpty())
+            for (ChangeListener l : changeListeners)
+                l.onChanges(ret);
+        return ret;
+    }
+
+    public void addChangeListener(ChangeListener l) {
+        if (publishTracker == null)
+            publishTracker = new ChangeTracker(this);
+        changeListeners.add(l);
+    }
+
+    public void removeChangeListener(ChangeListener l) {
+        changeListeners.remove(l);
+        if (changeListeners.isEmpty())
+            publishTracker = null;
+    }
+
+    private ChangeSet drain(ChangeTracker t) {
+        if (t == null)
+            return new ChangeSet(0, false, xMin(), xMax(), yMin(), yMax(), this, Collections.emptyList());
+        return t.drain(this);
+    }
+
+    /**
+     * @return a number increased on every counter change, see {@link TileEncoder}
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return a number increased every time chunks are dropped from the atlas without their
+     * cells being reported, e.g. by a {@link RollingGridAtlas} moving its window. The bounds may
+     * come back the same afterwards, so anything kept about cells has to be checked against it.
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Makes counters fade over epochs, or stops it with null. {@link #advanceEpoch()} costs
+     * nothing, every chunk applies the decay it owes once it is read or written. Reads show the
+     * decayed counters, while the cells changed by decay are only reported to listeners and change
+     * trackers when the chunk is next written or checked by {@link #compactIdle(long)}.
+     */
+    public void setDecay(DecayPolicy decay) {
+        if (this.decay == null && decay != null)
+            forEachStored(c -> {
+                if (c instanceof ChunkFilled)
+                    ((ChunkFilled) c).agedEpoch = epoch;
+            });
+        this.decay = decay;
+    }
+
+    public DecayPolicy getDecay() {
+        return decay;
+    }
+
+    public void advanceEpoch() {
+        epoch++;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Reports the decay of the chunks not written for {@code idleEpochs}, then drops those left
+     * without counters.
+     *
+     * @return the number of chunks dropped
+     */
+    public int compactIdle(long idleEpochs) {
+        List<ChunkFilled> idle = new ArrayList<>();
+        forEachStored(c -> {
+            if (c instanceof ChunkFilled && epoch - ((ChunkFilled) c).touchedEpoch >= idleEpochs)
+                idle.add((ChunkFilled) c);
+        });
+        int ret = 0;
+        for (ChunkFilled c : idle) {
+            c.settle();
+            if (c.isClear()) {
+                removeChunkAt(c.getX(), c.getY());
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Counts the heap used by chunk storage, see {@link MemoryStats} for the categories.
+     */
+    public MemoryStats memoryStats() {
+        MemoryStats ret = new MemoryStats();
+        ret.addSection(chunks.capacity(), chunks.size());
+        for (Section<Chunk> row : chunks) {
+            if (row == null) {
+                ret.addEmpty();
+                continue;
+            }
+            ret.addReference();
+            ret.addSection(row.capacity(), row.size());
+            for (Chunk c : row) {
+                if (c instanceof ChunkFilled)
+                    ret.addChunk((ChunkFilled) c);
+                else
+                    ret.addEmpty();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Drops the chunks left without counters or layer values, then trims chunk storage to the
+     * chunks still stored. Meant for when exploration is done, growing again costs reallocation.
+     *
+     * @return the number of bytes released, as counted by {@link #memoryStats()}
+     */
+    public long compact() {
+        long before = memoryStats().getTotalBytes();
+        compactIdle(0);
+        trimStorage();
+        return before - memoryStats().getTotalBytes();
+    }
+
+    protected void trimStorage() {
+        for (int i = chunks.start(); i <= chunks.end(); i++) {
+            Optional<Section<Chunk>> row = chunks.get(i);
+            if (!row.isPresent())
+                continue;
+            Section<Chunk> r = row.get();
+            trimEdges(r);
+            if (r.isEmpty())
+                chunks.set(i, null);
+            else
+                r.trimToSize();
+        }
+        trimEdges(chunks);
+        chunks.trimToSize();
+    }
+
+    private static <E> void trimEdges(Section<E> s) {
+        while (!s.isEmpty() && !s.get(s.end()).isPresent())
+            s.remove(true);
+        while (!s.isEmpty() && !s.get(s.start()).isPresent())
+            s.remove(false);
+    }
+
+    public Layer.Bytes addByteLayer(String name) {
+        return addLayer(new Layer.Bytes(this, name, layers.size()));
+    }
+
+    public Layer.Shorts addShortLayer(String name) {
+        return addLayer(new Layer.Shorts(this, name, layers.size()));
+    }
+
+    public Layer.Ints addIntLayer(String name) {
+        return addLayer(new Layer.Ints(this, name, layers.size()));
+    }
+
+    public Layer.Floats addFloatLayer(String name) {
+        return addLayer(new Layer.Floats(this, name, layers.size()));
+    }
+
+    public Optional<Layer> getLayer(String name) {
+        return layers.stream().filter(l -> l.getName().equals(name)).findFirst();
+    }
+
+    private <T extends Layer> T addLayer(T layer) {
+        if (getLayer(layer.getName()).isPresent())
+            throw new IllegalArgumentException("Duplicated layer: " + layer.getName());
+        layers.add(layer);
+        return layer;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public ChunkGeometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Reads the counter of a cell without expanding the atlas or promoting the chunk.
+     *
+     * @return the counter, or -1 if the cell lies outside the atlas
+     */
+    public int getCounterAt(int x, int y) {
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        if (xChunk < xMinChunk() || xChunk > xMaxChunk() || yChunk < yMinChunk() || yChunk > yMaxChunk())
+            return -1;
+        ChunkFilled c = filledChunkAt(xChunk, yChunk);
+        return c == null ? 0 : c.getCounterRel(geometry.offsetOf(x), geometry.offsetOf(y));
+    }
+
+    /**
+     * Packs the coordinates of a cell into a handle for {@link #counter(long)},
+     * {@link #neighbours(long, long[])} and {@link #isFree(long)}. Handles are plain coordinates,
+     * so they stay valid as the atlas grows and can be kept in primitive collections.
+     */
+    public static long cellHandle(int x, int y) {
+        return pack(x, y);
+    }
+
+    public static int handleX(long handle) {
+        return unpackX(handle);
+    }
+
+    public static int handleY(long handle) {
+        return unpackY(handle);
+    }
+
+    /**
+     * Reads the counter of a cell like {@link #getCounterAt(int, int)}, allocating nothing.
+     *
+     * @return the counter, or -1 if the cell lies outside the atlas
+     */
+    public int counter(long handle) {
+        return getCounterAt(unpackX(handle), unpackY(handle));
+    }
+
+    /**
+     * Writes the handles of the 4-connected neighbours lying inside the atlas to {@code out},
+     * which needs room for four.
+     *
+     * @return the number of handles written
+     */
+    public int neighbours(long handle, long[] out) {
+        int x = unpackX(handle);
+        int y = unpackY(handle);
+        int xMin = xMin(), xMax = xMax(), yMin = yMin(), yMax = yMax();
+        int n = 0;
+        if (y >= yMin && y <= yMax) {
+            if (x > xMin && x - 1 <= xMax)
+                out[n++] = pack(x - 1, y);
+            if (x < xMax && x + 1 >= xMin)
+                out[n++] = pack(x + 1, y);
+        }
+        if (x >= xMin && x <= xMax) {
+            if (y > yMin && y - 1 <= yMax)
+                out[n++] = pack(x, y - 1);
+            if (y < yMax && y + 1 >= yMin)
+                out[n++] = pack(x, y + 1);
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the cell lies inside the atlas and its counter is zero
+     */
+    public boolean isFree(long handle) {
+        return counter(handle) == 0;
+    }
+
+    protected void markDirty(int x, int y) {
+        if (frontiers != null)
+            frontiers.observe(x, y);
+        if (tracker != null)
+            tracker.markCell(geometry.chunkOf(x), geometry.chunkOf(y), geometry.offsetOf(x), geometry.offsetOf(y));
+        if (publishTracker != null)
+            publishTracker.markCell(geometry.chunkOf(x), geometry.chunkOf(y), geometry.offsetOf(x), geometry.offsetOf(y));
+    }
+
+    protected void notifyCellChanged(int x, int y, boolean blocked) {
+        for (CellListener l : listeners)
+            l.onCellChanged(x, y, blocked);
     }
 
     protected int xMinChunk() {
-        return chunks.start();
+        return xMinChunk;
     }
 
     protected int xMaxChunk() {
-        return chunks.end();
+        return xMaxChunk;
     }
 
     protected int yMinChunk() {
-        return chunks.isEmpty() ? 0 : chunks.iterator().next().start();
+        return yMinChunk;
     }
 
     protected int yMaxChunk() {
-        return chunks.isEmpty() ? -1 : chunks.iterator().next().end();
+        return yMaxChunk;
     }
 
     protected Optional<Chunk> getNeighbourChunk(Chunk c, enumDirection d) {
@@ -115,63 +589,141 @@ public class GridAtlas {
         }
     }
 
+    // Chunks inside the bounds are only stored once filled, the others are handed out on demand.
     protected Optional<Chunk> getChunkAt(int x, int y) {
-        Optional<Section<Chunk>> row = chunks.get(x);
-        if (!row.isPresent())
+        if (x < xMinChunk || x > xMaxChunk || y < yMinChunk || y > yMaxChunk)
             return Optional.empty();
-        else
-            return row.get().get(y);
+        Optional<Section<Chunk>> row = chunks.get(x);
+        Optional<Chunk> ret = row.isPresent() ? row.get().get(y) : Optional.empty();
+        return ret.isPresent() ? ret : Optional.of(new ChunkEmpty(x, y));
     }
 
     protected void setChunkAt(int x, int y, Chunk c) {
-        Optional<Section<Chunk>> row = chunks.get(x);
-        if (!row.isPresent())
+        if (x < xMinChunk || x > xMaxChunk || y < yMinChunk || y > yMaxChunk)
             throw new IndexOutOfBoundsException();
-        else
-            row.get().set(y, c);
+        Optional<Section<Chunk>> row = chunks.get(x);
+        Section<Chunk> r;
+        if (row.isPresent()) {
+            r = row.get();
+        } else {
+            r = new ArraySection<>(y);
+            chunks.ensureRange(x, x);
+            chunks.set(x, r);
+        }
+        r.ensureRange(y, y);
+        markStored(x, y, r.set(y, c).orElse(null), c);
+    }
+
+    protected void markStored(int x, int y, Chunk old, Chunk c) {
+        if (!(old instanceof ChunkFilled) && c instanceof ChunkFilled) {
+            if (tracker != null)
+                tracker.markPromoted(x, y);
+            if (publishTracker != null)
+                publishTracker.markPromoted(x, y);
+        }
+    }
+
+    protected void markEvicted() {
+        evictions++;
+        markExpanded();
+    }
+
+    protected void markExpanded() {
+        if (tracker != null)
+            tracker.markExpanded();
+        if (publishTracker != null)
+            publishTracker.markExpanded();
+    }
+
+    ChunkFilled newChunk(int x, int y) {
+        return new ChunkFilled(x, y);
     }
 
+    ChunkFilled getFilledChunk(int x, int y) {
+        expandTo(x, y);
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        Chunk c = getChunkAt(xChunk, yChunk).orElseThrow(() ->
+                new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is outside the atlas."));
+        ChunkFilled ret = c.generate();
+        if (ret != c)
+            setChunkAt(xChunk, yChunk, ret);
+        return ret;
+    }
+
+    // The stored chunk at a place inside the bounds, null if empty. Allocates nothing.
+    ChunkFilled filledChunkAt(int x, int y) {
+        Section<Chunk> row = chunks.getOrNull(x);
+        Chunk ret = row == null ? null : row.getOrNull(y);
+        return ret instanceof ChunkFilled ? (ChunkFilled) ret : null;
+    }
+
+    protected void removeChunkAt(int x, int y) {
+        Optional<Section<Chunk>> row = chunks.get(x);
+        if (row.isPresent() && row.get().get(y).isPresent())
+            row.get().set(y, null);
+    }
+
+    protected void forEachStored(Consumer<Chunk> action) {
+        for (Section<Chunk> row : chunks)
+            if (row != null)
+                for (Chunk c : row)
+                    if (c != null)
+                        action.accept(c);
+    }
+
+    // Keeps a margin of one chunk around the requested cell.
     protected void expandTo(int x, int y) {
         if (x <= xMax() && x >= xMin() && y <= yMax() && y >= yMin())
             return;
-        int xChunk = divFlr(x, chunkSize);
-        int yChunk = divFlr(y, chunkSize);
-        int i;
-        if (xChunk < (i = xMinChunk())) {
-            for (int j = i - xChunk + 1; j > 0; j--) {
-                expandX(false);
-            }
-        } else if (xChunk > (i = xMaxChunk())) {
-            for (int j = xChunk - i + 1; j > 0; j--) {
-                expandX(true);
-            }
-        }
-        if (yChunk < (i = yMinChunk())) {
-            for (int j = i - yChunk + 1; j > 0; j--) {
-                expandY(false);
-            }
-        } else if (yChunk > (i = yMaxChunk())) {
-            for (int j = yChunk - i + 1; j > 0; j--) {
-                expandY(true);
-            }
-        }
+        markExpanded();
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        if (xChunk < xMinChunk)
+            xMinChunk = xChunk - 1;
+        else if (xChunk > xMaxChunk)
+            xMaxChunk = xChunk + 1;
+        if (yChunk < yMinChunk)
+            yMinChunk = yChunk - 1;
+        else if (yChunk > yMaxChunk)
+            yMaxChunk = yChunk + 1;
+    }
+
+    // Grows the bounds to cover the given chunks exactly, without the margin of expandTo.
+    void expandToChunks(int xMin, int xMax, int yMin, int yMax) {
+        if (xMin >= xMinChunk && xMax <= xMaxChunk && yMin >= yMinChunk && yMax <= yMaxChunk)
+            return;
+        markExpanded();
+        xMinChunk = Math.min(xMinChunk, xMin);
+        xMaxChunk = Math.max(xMaxChunk, xMax);
+        yMinChunk = Math.min(yMinChunk, yMin);
+        yMaxChunk = Math.max(yMaxChunk, yMax);
     }
 
     protected void expandX(boolean forward) {
-        int yMin = yMinChunk();
-        int yMax = yMaxChunk();
-        int x = forward ? xMaxChunk() + 1 : xMinChunk() - 1;
-        ArraySection<Chunk> ret = new ArraySection<>(yMin);
-        for (int i = yMin; i <= yMax; i++)
-            ret.set(i, new ChunkEmpty(x, i));
-        chunks.add(ret, forward);
+        if (forward)
+            xMaxChunk++;
+        else
+            xMinChunk--;
     }
 
     protected void expandY(boolean forward) {
-        SectionIterator<Section<Chunk>> i = chunks.sectionIterator();
-        int y = forward ? yMaxChunk() + 1 : yMinChunk() - 1;
-        while (i.hasNext()) {
-            i.next().add(new ChunkEmpty(i.previousIndex(), y), forward);
+        if (forward)
+            yMaxChunk++;
+        else
+            yMinChunk--;
+    }
+
+    private static class MergeResult {
+        final Chunk chunk;
+        final int[] counters;
+        final int[] cells;
+        int size;
+
+        MergeResult(Chunk chunk, int[] counters, int capacity) {
+            this.chunk = chunk;
+            this.counters = counters;
+            this.cells = new int[capacity];
         }
     }
 
@@ -198,12 +750,44 @@ public class GridAtlas {
         List<Cell> getAccessibleCells();
 
         default double getDistanceTo(Cell c) {
-            return Math.pow(Math.pow(getX() - c.getX(), 2.0) + Math.pow(getY() - c.getY(), 2.0), 0.5);
+            double dx = getX() - c.getX();
+            double dy = getY() - c.getY();
+            return Math.sqrt(dx * dx + dy * dy);
         }
 
         int getX();
 
         int getY();
+
+        default byte get(Layer.Bytes layer) {
+            return layer.get(getX(), getY());
+        }
+
+        default short get(Layer.Shorts layer) {
+            return layer.get(getX(), getY());
+        }
+
+        default int get(Layer.Ints layer) {
+            return layer.get(getX(), getY());
+        }
+
+        default float get(Layer.Floats layer) {
+            return layer.get(getX(), getY());
+        }
+    }
+
+    /**
+     * Receives counter transitions to and from zero, i.e. a cell becoming blocked or free.
+     */
+    public interface CellListener {
+        void onCellChanged(int x, int y, boolean blocked);
+    }
+
+    /**
+     * Receives the changes of the atlas in batches, see {@link #publishChanges()}.
+     */
+    public interface ChangeListener {
+        void onChanges(ChangeSet changes);
     }
 
     abstract class Chunk {
@@ -223,6 +807,8 @@ public class GridAtlas {
 
         abstract Optional<Cell> getEmptyBoundaryPointAt(enumDirection d, int index);
 
+        abstract int getCounter(int x, int y);
+
         Optional<Chunk> getChunkAt(enumDirection d) {
             return getNeighbourChunk(this, d);
         }
@@ -254,12 +840,17 @@ public class GridAtlas {
 
         @Override
         ChunkFilled generate() {
-            return new ChunkFilled(this.x, this.y);
+            return newChunk(this.x, this.y);
         }
 
         @Override
         Chunk updateCell(int x, int y, boolean up) {
-            return up ? new ChunkFilled(this.x, this.y).updateCell(x, y, true) : this;
+            return up ? newChunk(this.x, this.y).updateCell(x, y, true) : this;
+        }
+
+        @Override
+        int getCounter(int x, int y) {
+            return 0;
         }
 
         class CellEmpty implements Cell {
@@ -286,7 +877,12 @@ public class GridAtlas {
     }
 
     class ChunkFilled extends Chunk {
-        int[][] counters = new int[chunkSize][chunkSize];
+        int[] counters = new int[geometry.cells()];
+        long version;
+        long agedEpoch = epoch;
+        long touchedEpoch = epoch;
+        long[] decayed;
+        Object[] layerData;
 
         public ChunkFilled(int x, int y) {
             super(x, y);
@@ -294,29 +890,30 @@ public class GridAtlas {
 
         @Override
         public List<Cell> getEmptyBoundaryPoints(enumDirection d) {
+            age();
             ArrayList<Cell> ret = new ArrayList<>(chunkSize);
             switch (d) {
                 case EAST:
                     for (int i = 0; i < chunkSize; i++) {
-                        if (counters[chunkSize - 1][i] == 0)
+                        if (counters[geometry.index(chunkSize - 1, i)] == 0)
                             ret.add(new CellFilled(chunkSize - 1, i));
                     }
                     break;
                 case WEST:
                     for (int i = 0; i < chunkSize; i++) {
-                        if (counters[0][i] == 0)
+                        if (counters[geometry.index(0, i)] == 0)
                             ret.add(new CellFilled(0, i));
                     }
                     break;
                 case NORTH:
                     for (int i = 0; i < chunkSize; i++) {
-                        if (counters[i][chunkSize - 1] == 0)
+                        if (counters[geometry.index(i, chunkSize - 1)] == 0)
                             ret.add(new CellFilled(i, chunkSize - 1));
                     }
                     break;
                 case SOUTH:
                     for (int i = 0; i < chunkSize; i++) {
-                        if (counters[i][0] == 0)
+                        if (counters[geometry.index(i, 0)] == 0)
                             ret.add(new CellFilled(i, 0));
                     }
                     break;
@@ -328,24 +925,25 @@ public class GridAtlas {
 
         @Override
         public Optional<Cell> getEmptyBoundaryPointAt(enumDirection d, int index) {
+            age();
             switch (d) {
                 case EAST:
-                    if (counters[chunkSize - 1][index] == 0)
+                    if (counters[geometry.index(chunkSize - 1, index)] == 0)
                         return Optional.of(new CellFilled(chunkSize - 1, index));
                     else
                         return Optional.empty();
                 case WEST:
-                    if (counters[0][index] == 0)
+                    if (counters[geometry.index(0, index)] == 0)
                         return Optional.of(new CellFilled(0, index));
                     else
                         return Optional.empty();
                 case NORTH:
-                    if (counters[index][chunkSize - 1] == 0)
+                    if (counters[geometry.index(index, chunkSize - 1)] == 0)
                         return Optional.of(new CellFilled(index, chunkSize - 1));
                     else
                         return Optional.empty();
                 case SOUTH:
-                    if (counters[index][0] == 0)
+                    if (counters[geometry.index(index, 0)] == 0)
                         return Optional.of(new CellFilled(index, 0));
                     else
                         return Optional.empty();
@@ -355,8 +953,7 @@ public class GridAtlas {
         }
 
         Cell getCell(int x, int y) {
-            if (x >= this.x * chunkSize && x < (this.x + 1) * chunkSize - 1 &&
-                    y >= this.y * chunkSize && y < (this.y + 1) * chunkSize - 1)
+            if (geometry.chunkOf(x) == this.x && geometry.chunkOf(y) == this.y)
                 return new CellFilled(x, y, false);
             else
                 throw new IllegalStateException("Internal error");
@@ -369,14 +966,139 @@ public class GridAtlas {
 
         @Override
         Chunk updateCell(int x, int y, boolean up) {
+            settle();
+            int i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
             if (up) {
-                counters[x % chunkSize][y % chunkSize]++;
-            } else if (counters[x % chunkSize][y % chunkSize] > 0) {
-                counters[x % chunkSize][y % chunkSize]--;
+                version = ++GridAtlas.this.version;
+                touchedEpoch = epoch;
+                markDirty(x, y);
+                if (counters[i]++ == 0)
+                    notifyCellChanged(x, y, true);
+            } else if (counters[i] > 0) {
+                version = ++GridAtlas.this.version;
+                touchedEpoch = epoch;
+                markDirty(x, y);
+                if (--counters[i] == 0)
+                    notifyCellChanged(x, y, false);
             }
             return this;
         }
 
+        void setCounter(int xRel, int yRel, int value) {
+            settle();
+            int i = geometry.index(xRel, yRel);
+            int old = counters[i];
+            if (old == value)
+                return;
+            counters[i] = value;
+            version = ++GridAtlas.this.version;
+            touchedEpoch = epoch;
+            int x = this.x * chunkSize + xRel;
+            int y = this.y * chunkSize + yRel;
+            markDirty(x, y);
+            if ((old == 0) != (value == 0))
+                notifyCellChanged(x, y, value != 0);
+        }
+
+        int getCounterRel(int xRel, int yRel) {
+            age();
+            return counters[geometry.index(xRel, yRel)];
+        }
+
+        @Override
+        int getCounter(int x, int y) {
+            age();
+            return counters[geometry.index(geometry.offsetOf(x), geometry.offsetOf(y))];
+        }
+
+        // Applies the whole periods of decay passed since last aged, the rest is kept for later.
+        // Reads call it, so nothing is reported here, the cells changed are kept for settle().
+        void age() {
+            if (decay == null || epoch - agedEpoch < decay.period())
+                return;
+            long period = decay.period();
+            long epochs = (epoch - agedEpoch) / period * period;
+            agedEpoch += epochs;
+            for (int i = 0; i < counters.length; i++) {
+                int old = counters[i];
+                if (old == 0)
+                    continue;
+                int now = Math.max(0, decay.decay(old, epochs));
+                if (now == old)
+                    continue;
+                counters[i] = now;
+                if (decayed == null)
+                    decayed = new long[(counters.length + 63) >>> 6];
+                decayed[i >>> 6] |= 1L << i;
+            }
+        }
+
+        // Ages the chunk and reports the cells changed by decay so far, before it is written.
+        void settle() {
+            age();
+            long[] bits = decayed;
+            if (bits == null)
+                return;
+            decayed = null;
+            version = ++GridAtlas.this.version;
+            for (int w = 0; w < bits.length; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    int i = w << 6 | Long.numberOfTrailingZeros(word);
+                    int x = this.x * chunkSize + geometry.xOf(i);
+                    int y = this.y * chunkSize + geometry.yOf(i);
+                    markDirty(x, y);
+                    if (counters[i] == 0)
+                        notifyCellChanged(x, y, false);
+                }
+            }
+        }
+
+        Object layer(int index) {
+            return layerData == null || index >= layerData.length ? null : layerData[index];
+        }
+
+        Object layerOrAllocate(Layer l) {
+            if (layerData == null || l.index >= layerData.length)
+                layerData = layerData == null ? new Object[layers.size()] : Arrays.copyOf(layerData, layers.size());
+            if (layerData[l.index] == null)
+                layerData[l.index] = l.allocate(geometry.cells());
+            return layerData[l.index];
+        }
+
+        // Makes a chunk taken out of the atlas good for reuse at another place.
+        void reset(int x, int y) {
+            this.x = x;
+            this.y = y;
+            Arrays.fill(counters, 0);
+            version = ++GridAtlas.this.version;
+            agedEpoch = epoch;
+            touchedEpoch = epoch;
+            decayed = null;
+            if (layerData == null)
+                return;
+            for (Object o : layerData) {
+                if (o instanceof byte[])
+                    Arrays.fill((byte[]) o, (byte) 0);
+                else if (o instanceof short[])
+                    Arrays.fill((short[]) o, (short) 0);
+                else if (o instanceof int[])
+                    Arrays.fill((int[]) o, 0);
+                else if (o instanceof float[])
+                    Arrays.fill((float[]) o, 0);
+            }
+        }
+
+        boolean isClear() {
+            if (layerData != null)
+                for (Object o : layerData)
+                    if (o != null)
+                        return false;
+            for (int c : counters)
+                if (c != 0)
+                    return false;
+            return true;
+        }
+
         class CellFilled implements Cell {
             int x;
             int y;
@@ -438,8 +1160,33 @@ public class GridAtlas {
                 return y;
             }
 
+            @Override
+            public byte get(Layer.Bytes layer) {
+                byte[] a = (byte[]) layer(layer.index);
+                return a == null ? 0 : a[geometry.index(xRel, yRel)];
+            }
+
+            @Override
+            public short get(Layer.Shorts layer) {
+                short[] a = (short[]) layer(layer.index);
+                return a == null ? 0 : a[geometry.index(xRel, yRel)];
+            }
+
+            @Override
+            public int get(Layer.Ints layer) {
+                int[] a = (int[]) layer(layer.index);
+                return a == null ? 0 : a[geometry.index(xRel, yRel)];
+            }
+
+            @Override
+            public float get(Layer.Floats layer) {
+                float[] a = (float[]) layer(layer.index);
+                return a == null ? 0 : a[geometry.index(xRel, yRel)];
+            }
+
             private int getCounterAt(int x, int y) {
-                return counters[x][y];
+                age();
+                return counters[geometry.index(x, y)];
             }
 
 
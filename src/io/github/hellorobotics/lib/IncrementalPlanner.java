@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * D* Lite planner over the cells of a {@link GridAtlas}. The search tree is kept between calls
+ * to {@link #replan()}, and cells reported blocked or freed by the atlas only repair the part
+ * of the tree that depends on them. Moves are 4-connected with unit cost, the same as
+ * {@link GridAtlas.Cell#getAccessibleCells()}, and cells outside the atlas are not traversable.
+ */
+public class IncrementalPlanner implements GridAtlas.CellListener {
+    private static final int INF = Integer.MAX_VALUE / 2;
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final GridAtlas atlas;
+    private final HashMap<Long, Node> nodes = new HashMap<>();
+    private final PriorityQueue<Entry> open = new PriorityQueue<>();
+    private Set<Long> changed = new LinkedHashSet<>();
+    private final Node goal;
+    private Node start;
+    private Node last;
+    private int km;
+    private int xMin, xMax, yMin, yMax;
+    private long evictions;
+
+    public IncrementalPlanner(GridAtlas atlas, int xStart, int yStart, int xGoal, int yGoal) {
+        this.atlas = atlas;
+        goal = node(xGoal, yGoal);
+        start = last = node(xStart, yStart);
+        goal.rhs = 0;
+        insert(goal);
+        xMin = atlas.xMin();
+        xMax = atlas.xMax();
+        yMin = atlas.yMin();
+        yMax = atlas.yMax();
+        evictions = atlas.getEvictionCount();
+        atlas.addCellListener(this);
+    }
+
+    @Override
+    public void onCellChanged(int x, int y, boolean blocked) {
+        changed.add(GridAtlas.pack(x, y));
+    }
+
+    public void moveTo(int x, int y) {
+        start = node(x, y);
+    }
+
+    /**
+     * Applies the cell changes reported since the last call and repairs the search tree.
+     *
+     * @return whether the goal is reachable from the current start
+     */
+    public boolean replan() {
+        if (start != last) {
+            km += heuristic(last, start);
+            last = start;
+        }
+        checkBounds();
+        // Changes reported while repairing are left for the next call.
+        Set<Long> pending = changed;
+        changed = new LinkedHashSet<>();
+        for (long k : pending) {
+            int x = GridAtlas.unpackX(k);
+            int y = GridAtlas.unpackY(k);
+            for (int i = 0; i < 4; i++)
+                if (contains(x + DX[i], y + DY[i]))
+                    updateVertex(node(x + DX[i], y + DY[i]));
+        }
+        computeShortestPath();
+        return isReachable();
+    }
+
+    /**
+     * @return the cells from start to goal, both included, or an empty list if there is no path
+     */
+    public List<Point> getPath() {
+        if (!isReachable())
+            return Collections.emptyList();
+        List<Point> ret = new ArrayList<>();
+        Node n = start;
+        ret.add(new Point(n.x, n.y));
+        while (n != goal) {
+            Node next = null;
+            int best = INF;
+            for (int i = 0; i < 4; i++) {
+                Node s = nodes.get(GridAtlas.pack(n.x + DX[i], n.y + DY[i]));
+                if (s != null && cost(s) + s.g < best) {
+                    best = cost(s) + s.g;
+                    next = s;
+                }
+            }
+            if (next == null || ret.size() > nodes.size())
+                return Collections.emptyList();
+            n = next;
+            ret.add(new Point(n.x, n.y));
+        }
+        return ret;
+    }
+
+    public void detach() {
+        atlas.removeCellListener(this);
+    }
+
+    // A start outside the atlas is never repaired, its distance may be left from before.
+    private boolean isReachable() {
+        return contains(start.x, start.y) && start.g < INF;
+    }
+
+    private boolean boundsChanged() {
+        return xMin != atlas.xMin() || xMax != atlas.xMax() || yMin != atlas.yMin() || yMax != atlas.yMax();
+    }
+
+    // Cells just outside the old bounds gained in-bound neighbours, and the other way round.
+    private void checkBounds() {
+        boolean evicted = evictions != atlas.getEvictionCount();
+        if (!evicted && !boundsChanged())
+            return;
+        evictions = atlas.getEvictionCount();
+        int x0 = xMin, x1 = xMax, y0 = yMin, y1 = yMax;
+        xMin = atlas.xMin();
+        xMax = atlas.xMax();
+        yMin = atlas.yMin();
+        yMax = atlas.yMax();
+        for (int y = y0; y <= y1; y++) {
+            if (x0 > xMin)
+                changed.add(GridAtlas.pack(x0 - 1, y));
+            if (x1 < xMax)
+                changed.add(GridAtlas.pack(x1 + 1, y));
+        }
+        for (int x = x0; x <= x1; x++) {
+            if (y0 > yMin)
+                changed.add(GridAtlas.pack(x, y0 - 1));
+            if (y1 < yMax)
+                changed.add(GridAtlas.pack(x, y1 + 1));
+        }
+        // A goal coming inside has neighbours to reach it through now.
+        if ((goal.x < x0 || goal.x > x1 || goal.y < y0 || goal.y > y1) && contains(goal.x, goal.y))
+            changed.add(GridAtlas.pack(goal.x, goal.y));
+        for (long k : new ArrayList<>(changed)) {
+            int x = GridAtlas.unpackX(k);
+            int y = GridAtlas.unpackY(k);
+            if (x < x0 || x > x1 || y < y0 || y > y1)
+                updateVertex(node(x, y));
+        }
+        // A window that moved drops cells anywhere, so every known cell is checked again.
+        if (evicted)
+            changed.addAll(nodes.keySet());
+    }
+
+    private void computeShortestPath() {
+        Entry top;
+        while ((top = peek()) != null && (compare(top.k1, top.k2, key1(start), key2(start)) < 0 || start.rhs != start.g)) {
+            open.poll();
+            Node u = top.node;
+            int k1 = key1(u);
+            int k2 = key2(u);
+            if (compare(top.k1, top.k2, k1, k2) < 0) {
+                insert(u);
+            } else if (u.g > u.rhs) {
+                u.g = u.rhs;
+                u.open = false;
+                for (int i = 0; i < 4; i++)
+                    if (contains(u.x + DX[i], u.y + DY[i]))
+                        updateVertex(node(u.x + DX[i], u.y + DY[i]));
+            } else {
+                u.g = INF;
+                updateVertex(u);
+                for (int i = 0; i < 4; i++)
+                    if (contains(u.x + DX[i], u.y + DY[i]))
+                        updateVertex(node(u.x + DX[i], u.y + DY[i]));
+            }
+        }
+    }
+
+    private void updateVertex(Node u) {
+        if (u != goal) {
+            int rhs = INF;
+            for (int i = 0; i < 4; i++) {
+                Node s = nodes.get(GridAtlas.pack(u.x + DX[i], u.y + DY[i]));
+                if (s != null)
+                    rhs = Math.min(rhs, cost(s) + s.g);
+            }
+            u.rhs = Math.min(rhs, INF);
+        }
+        u.open = false;
+        if (u.g != u.rhs)
+            insert(u);
+    }
+
+    private Entry peek() {
+        Entry e;
+        while ((e = open.peek()) != null) {
+            if (e.node.open && e.k1 == e.node.k1 && e.k2 == e.node.k2)
+                return e;
+            open.poll();
+        }
+        return null;
+    }
+
+    private void insert(Node n) {
+        n.k1 = key1(n);
+        n.k2 = key2(n);
+        n.open = true;
+        open.add(new Entry(n, n.k1, n.k2));
+    }
+
+    private int key1(Node n) {
+        int m = Math.min(n.g, n.rhs);
+        return m >= INF ? INF : m + heuristic(start, n) + km;
+    }
+
+    private int key2(Node n) {
+        return Math.min(n.g, n.rhs);
+    }
+
+    private int cost(Node to) {
+        return atlas.getCounterAt(to.x, to.y) == 0 ? 1 : INF;
+    }
+
+    private boolean contains(int x, int y) {
+        return x >= xMin && x <= xMax && y >= yMin && y <= yMax;
+    }
+
+    private Node node(int x, int y) {
+        return nodes.computeIfAbsent(GridAtlas.pack(x, y), k -> new Node(x, y));
+    }
+
+    private static int heuristic(Node a, Node b) {
+        return Math.abs(a.x - b.x) + Math.abs(a.y - b.y);
+    }
+
+    private static int compare(int a1, int a2, int b1, int b2) {
+        return a1 != b1 ? Integer.compare(a1, b1) : Integer.compare(a2, b2);
+    }
+
+    private static class Node {
+        final int x;
+        final int y;
+        int g = INF;
+        int rhs = INF;
+        int k1;
+        int k2;
+        boolean open;
+
+        Node(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final Node node;
+        final int k1;
+        final int k2;
+
+        Entry(Node node, int k1, int k2) {
+            this.node = node;
+            this.k1 = k1;
+            this.k2 = k2;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return compare(k1, k2, o.k1, o.k2);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.Optional;
+
+/**
+ * A typed value attached to every cell of an atlas, next to the counter. Each filled chunk keeps
+ * one primitive array per layer, allocated on the first write and indexed like the counters.
+ * Reads never expand the atlas or promote chunks and give 0 where nothing was written.
+ * Layers are not covered by change sets, merging or tile coding.
+ */
+public abstract class Layer {
+    final GridAtlas atlas;
+    final String name;
+    final int index;
+
+    Layer(GridAtlas atlas, String name, int index) {
+        this.atlas = atlas;
+        this.name = name;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    abstract Object allocate(int cells);
+
+    Object arrayAt(int x, int y) {
+        if (x > atlas.xMax() || x < atlas.xMin() || y > atlas.yMax() || y < atlas.yMin())
+            return null;
+        ChunkGeometry g = atlas.getGeometry();
+        Optional<GridAtlas.Chunk> c = atlas.getChunkAt(g.chunkOf(x), g.chunkOf(y));
+        return c.isPresent() && c.get() instanceof GridAtlas.ChunkFilled ? ((GridAtlas.ChunkFilled) c.get()).layer(index) : null;
+    }
+
+    Object arrayFor(int x, int y) {
+        return atlas.getFilledChunk(x, y).layerOrAllocate(this);
+    }
+
+    int index(int x, int y) {
+        ChunkGeometry g = atlas.getGeometry();
+        return g.index(g.offsetOf(x), g.offsetOf(y));
+    }
+
+    /**
+     * Calls back for every run of cells of a window that falls in the same chunk row, with the
+     * storage array of that chunk (null if absent) and the offset of the run in the output.
+     */
+    void forEachRun(int x, int y, int width, int height, RunConsumer action) {
+        ChunkGeometry g = atlas.getGeometry();
+        int size = g.size();
+        for (int j = y; j < y + height; j++) {
+            int i = x;
+            while (i < x + width) {
+                int len = Math.min(x + width - i, size - g.offsetOf(i));
+                action.accept(arrayAt(i, j), g.offsetOf(i), g.offsetOf(j), (j - y) * width + i - x, len);
+                i += len;
+            }
+        }
+    }
+
+    interface RunConsumer {
+        void accept(Object array, int xRel, int yRel, int out, int length);
+    }
+
+    public static final class Bytes extends Layer {
+        Bytes(GridAtlas atlas, String name, int index) {
+            super(atlas, name, index);
+        }
+
+        @Override
+        Object allocate(int cells) {
+            return new byte[cells];
+        }
+
+        public byte get(int x, int y) {
+            byte[] a = (byte[]) arrayAt(x, y);
+            return a == null ? 0 : a[index(x, y)];
+        }
+
+        public void set(int x, int y, byte value) {
+            ((byte[]) arrayFor(x, y))[index(x, y)] = value;
+        }
+
+        /**
+         * Copies a window, row by row from {@code (x, y)}, into {@code out}.
+         */
+        public void read(int x, int y, int width, int height, byte[] out) {
+            ChunkGeometry g = atlas.getGeometry();
+            forEachRun(x, y, width, height, (array, xRel, yRel, o, len) -> {
+                byte[] a = (byte[]) array;
+                if (a == null)
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = 0;
+                else if (g.isRowMajor())
+                    System.arraycopy(a, g.index(xRel, yRel), out, o, len);
+                else
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = a[g.index(xRel + k, yRel)];
+            });
+        }
+    }
+
+    public static final class Shorts extends Layer {
+        Shorts(GridAtlas atlas, String name, int index) {
+            super(atlas, name, index);
+        }
+
+        @Override
+        Object allocate(int cells) {
+            return new short[cells];
+        }
+
+        public short get(int x, int y) {
+            short[] a = (short[]) arrayAt(x, y);
+            return a == null ? 0 : a[index(x, y)];
+        }
+
+        public void set(int x, int y, short value) {
+            ((short[]) arrayFor(x, y))[index(x, y)] = value;
+        }
+
+        public void read(int x, int y, int width, int height, short[] out) {
+            ChunkGeometry g = atlas.getGeometry();
+            forEachRun(x, y, width, height, (array, xRel, yRel, o, len) -> {
+                short[] a = (short[]) array;
+                if (a == null)
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = 0;
+                else if (g.isRowMajor())
+                    System.arraycopy(a, g.index(xRel, yRel), out, o, len);
+                else
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = a[g.index(xRel + k, yRel)];
+            });
+        }
+    }
+
+    public static final class Ints extends Layer {
+        Ints(GridAtlas atlas, String name, int index) {
+            super(atlas, name, index);
+        }
+
+        @Override
+        Object allocate(int cells) {
+            return new int[cells];
+        }
+
+        public int get(int x, int y) {
+            int[] a = (int[]) arrayAt(x, y);
+            return a == null ? 0 : a[index(x, y)];
+        }
+
+        public void set(int x, int y, int value) {
+            ((int[]) arrayFor(x, y))[index(x, y)] = value;
+        }
+
+        public void read(int x, int y, int width, int height, int[] out) {
+            ChunkGeometry g = atlas.getGeometry();
+            forEachRun(x, y, width, height, (array, xRel, yRel, o, len) -> {
+                int[] a = (int[]) array;
+                if (a == null)
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = 0;
+                else if (g.isRowMajor())
+                    System.arraycopy(a, g.index(xRel, yRel), out, o, len);
+                else
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = a[g.index(xRel + k, yRel)];
+            });
+        }
+    }
+
+    public static final class Floats extends Layer {
+        Floats(GridAtlas atlas, String name, int index) {
+            super(atlas, name, index);
+        }
+
+        @Override
+        Object allocate(int cells) {
+            return new float[cells];
+        }
+
+        public float get(int x, int y) {
+            float[] a = (float[]) arrayAt(x, y);
+            return a == null ? 0 : a[index(x, y)];
+        }
+
+        public void set(int x, int y, float value) {
+            ((float[]) arrayFor(x, y))[index(x, y)] = value;
+        }
+
+        public void read(int x, int y, int width, int height, float[] out) {
+            ChunkGeometry g = atlas.getGeometry();
+            forEachRun(x, y, width, height, (array, xRel, yRel, o, len) -> {
+                float[] a = (float[]) array;
+                if (a == null)
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = 0;
+                else if (g.isRowMajor())
+                    System.arraycopy(a, g.index(xRel, yRel), out, o, len);
+                else
+                    for (int k = 0; k < len; k++)
+                        out[o + k] = a[g.index(xRel + k, yRel)];
+            });
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.lang.reflect.Array;
+
+/**
+ * Heap footprint of an atlas by category, see {@link GridAtlas#memoryStats()}. Sizes follow the
+ * layout of a 64 bit HotSpot VM with compressed references: 12 byte object headers, 16 byte
+ * array headers, 4 byte references and 8 byte alignment. Listeners, trackers and indexes built
+ * on the atlas are not counted.
+ */
+public final class MemoryStats {
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    // Two int and three long fields, the counters, the decayed cells, the layers, and the
+    // enclosing atlas held twice, by Chunk and by ChunkFilled, as both are inner classes.
+    static final int CHUNK = align(OBJECT_HEADER + 2 * 4 + 3 * 8 + 5 * REFERENCE);
+    // The backing array and four int fields.
+    static final int SECTION = align(OBJECT_HEADER + REFERENCE + 4 * 4);
+
+    private long counterBytes;
+    private long layerBytes;
+    private long headerBytes;
+    private long emptyChunkBytes;
+    private long slackBytes;
+    private int chunks;
+
+    static int align(long bytes) {
+        return (int) ((bytes + 7) & ~7);
+    }
+
+    void addChunk(GridAtlas.ChunkFilled c) {
+        chunks++;
+        counterBytes += 4L * c.counters.length;
+        headerBytes += REFERENCE + CHUNK + align(ARRAY_HEADER + 4L * c.counters.length) - 4L * c.counters.length;
+        if (c.decayed != null)
+            headerBytes += align(ARRAY_HEADER + 8L * c.decayed.length);
+        if (c.layerData == null)
+            return;
+        headerBytes += align(ARRAY_HEADER + (long) REFERENCE * c.layerData.length);
+        for (Object o : c.layerData) {
+            if (o == null)
+                continue;
+            long payload = (long) Array.getLength(o) * width(o);
+            layerBytes += payload;
+            headerBytes += align(ARRAY_HEADER + payload) - payload;
+        }
+    }
+
+    /**
+     * A chunk given back to a pool: all of it is slack until reused.
+     */
+    void addPooled(GridAtlas.ChunkFilled c) {
+        MemoryStats s = new MemoryStats();
+        s.addChunk(c);
+        slackBytes += s.getTotalBytes() - REFERENCE;
+    }
+
+    void addEmpty() {
+        emptyChunkBytes += REFERENCE;
+    }
+
+    void addReference() {
+        headerBytes += REFERENCE;
+    }
+
+    /**
+     * A section object with its backing array, whose slots in use are counted on their own.
+     */
+    void addSection(int capacity, int size) {
+        headerBytes += SECTION + align(ARRAY_HEADER + (long) REFERENCE * capacity) - (long) REFERENCE * capacity;
+        slackBytes += (long) REFERENCE * (capacity - size);
+    }
+
+    /**
+     * An array of references whose slots are counted on their own.
+     */
+    void addArray(int length) {
+        headerBytes += align(ARRAY_HEADER + (long) REFERENCE * length) - (long) REFERENCE * length;
+    }
+
+    private static int width(Object array) {
+        if (array instanceof byte[])
+            return 1;
+        else if (array instanceof short[])
+            return 2;
+        else
+            return 4;
+    }
+
+    /**
+     * @return the counters of filled chunks
+     */
+    public long getCounterBytes() {
+        return counterBytes;
+    }
+
+    /**
+     * @return the values of layers
+     */
+    public long getLayerBytes() {
+        return layerBytes;
+    }
+
+    /**
+     * @return object and array headers, fields, padding and the references to filled chunks
+     */
+    public long getHeaderBytes() {
+        return headerBytes;
+    }
+
+    /**
+     * @return the slots of chunk storage holding no chunk
+     */
+    public long getEmptyChunkBytes() {
+        return emptyChunkBytes;
+    }
+
+    /**
+     * @return the unused capacity of sections and pooled chunks
+     */
+    public long getSlackBytes() {
+        return slackBytes;
+    }
+
+    public long getTotalBytes() {
+        return counterBytes + layerBytes + headerBytes + emptyChunkBytes + slackBytes;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryStats{chunks=" + chunks + ", counters=" + counterBytes + ", layers=" + layerBytes +
+                ", headers=" + headerBytes + ", emptyChunks=" + emptyChunkBytes + ", slack=" + slackBytes +
+                ", total=" + getTotalBytes() + "}";
+    }
+}
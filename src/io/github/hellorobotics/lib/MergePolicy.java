@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+/**
+ * Combines two counters of the same cell when merging atlases, see
+ * {@link GridAtlas#merge(GridAtlas, int, int, MergePolicy)}.
+ */
+@FunctionalInterface
+public interface MergePolicy {
+    MergePolicy SUM = new MergePolicy() {
+        @Override
+        public int merge(int dest, int src) {
+            int ret = dest + src;
+            return ret < 0 ? Integer.MAX_VALUE : ret;
+        }
+
+        @Override
+        public boolean isZeroIdentity() {
+            return true;
+        }
+    };
+
+    MergePolicy MAX = new MergePolicy() {
+        @Override
+        public int merge(int dest, int src) {
+            return Math.max(dest, src);
+        }
+
+        @Override
+        public boolean isZeroIdentity() {
+            return true;
+        }
+    };
+
+    int merge(int dest, int src);
+
+    /**
+     * Policies returning true promise {@code merge(a, 0) == a} and {@code merge(0, b) == b}, which
+     * lets empty chunks be skipped and source counters be copied into empty chunks directly.
+     */
+    default boolean isZeroIdentity() {
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an atlas as an 8 bit grey image, north up, one chunk row at a time. Memory used is
+ * bounded by the width of the atlas times the chunk size, whatever the height.
+ */
+public class RasterExporter {
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_SIZE = 1 << 16;
+
+    private final GridAtlas atlas;
+    private IntUnaryOperator greyScale = c -> c <= 0 ? 255 : Math.max(0, 160 - 16 * c);
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    public RasterExporter(GridAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * @param greyScale maps a counter to a grey level in [0, 255]
+     */
+    public RasterExporter setGreyScale(IntUnaryOperator greyScale) {
+        this.greyScale = greyScale;
+        return this;
+    }
+
+    public RasterExporter setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int getWidth() {
+        return atlas.xMax() - atlas.xMin() + 1;
+    }
+
+    public int getHeight() {
+        return atlas.yMax() - atlas.yMin() + 1;
+    }
+
+    /**
+     * @return the exact size of the output, or -1 for compressed formats
+     */
+    public long getSize(Format format) {
+        long raster = (long) getWidth() * getHeight();
+        switch (format) {
+            case RAW:
+                return raster;
+            case PGM:
+                return header().length + raster;
+            default:
+                return -1;
+        }
+    }
+
+    public void export(ByteBuffer dst, Format format) throws IOException {
+        export(new BufferChannel(dst), format);
+    }
+
+    public void export(WritableByteChannel dst, Format format) throws IOException {
+        switch (format) {
+            case RAW:
+                writeRaster(dst, false, null);
+                break;
+            case PGM:
+                writeFully(dst, ByteBuffer.wrap(header()));
+                writeRaster(dst, false, null);
+                break;
+            case PNG:
+                writePng(dst);
+                break;
+        }
+    }
+
+    private byte[] header() {
+        return ("P5\n" + getWidth() + " " + getHeight() + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void writePng(WritableByteChannel dst) throws IOException {
+        writeFully(dst, ByteBuffer.wrap(PNG_SIGNATURE));
+        ByteBuffer ihdr = ByteBuffer.allocate(13);
+        ihdr.putInt(getWidth()).putInt(getHeight()).put((byte) 8).put((byte) 0)
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+        writePngChunk(dst, "IHDR", ihdr.array(), 13);
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            writeRaster(dst, true, deflater);
+            deflater.finish();
+            byte[] out = new byte[IDAT_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(out);
+                if (n > 0)
+                    writePngChunk(dst, "IDAT", out, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        writePngChunk(dst, "IEND", new byte[0], 0);
+    }
+
+    // Every scanline of a PNG starts with its filter type, always 0 here.
+    private void writeRaster(WritableByteChannel dst, boolean filterByte, Deflater deflater) throws IOException {
+        int chunkSize = atlas.getChunkSize();
+        ChunkGeometry geometry = atlas.getGeometry();
+        int width = getWidth();
+        int stride = width + (filterByte ? 1 : 0);
+        int xMin = atlas.xMinChunk();
+        int xMax = atlas.xMaxChunk();
+        byte[] buf = new byte[stride * chunkSize];
+        byte[] out = deflater == null ? null : new byte[IDAT_SIZE];
+        for (int j = atlas.yMaxChunk(); j >= atlas.yMinChunk(); j--) {
+            for (int i = xMin; i <= xMax; i++) {
+                int base = (filterByte ? 1 : 0) + (i - xMin) * chunkSize;
+                Optional<GridAtlas.Chunk> c = atlas.getChunkAt(i, j);
+                if (c.isPresent() && c.get() instanceof GridAtlas.ChunkFilled) {
+                    GridAtlas.ChunkFilled chunk = (GridAtlas.ChunkFilled) c.get();
+                    chunk.age();
+                    int[] counters = chunk.counters;
+                    for (int row = 0; row < chunkSize; row++) {
+                        int yRel = chunkSize - 1 - row;
+                        int off = row * stride + base;
+                        for (int xRel = 0; xRel < chunkSize; xRel++)
+                            buf[off + xRel] = (byte) greyScale.applyAsInt(counters[geometry.index(xRel, yRel)]);
+                    }
+                } else {
+                    byte value = (byte) greyScale.applyAsInt(0);
+                    for (int row = 0; row < chunkSize; row++)
+                        Arrays.fill(buf, row * stride + base, row * stride + base + chunkSize, value);
+                }
+            }
+            if (deflater == null) {
+                writeFully(dst, ByteBuffer.wrap(buf));
+            } else {
+                deflater.setInput(buf);
+                while (!deflater.needsInput()) {
+                    int n = deflater.deflate(out);
+                    if (n > 0)
+                        writePngChunk(dst, "IDAT", out, n);
+                }
+            }
+        }
+    }
+
+    private static void writePngChunk(WritableByteChannel dst, String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        ByteBuffer head = ByteBuffer.allocate(8);
+        head.putInt(length).put(name).flip();
+        writeFully(dst, head);
+        writeFully(dst, ByteBuffer.wrap(data, 0, length));
+        ByteBuffer tail = ByteBuffer.allocate(4);
+        tail.putInt((int) crc.getValue()).flip();
+        writeFully(dst, tail);
+    }
+
+    private static void writeFully(WritableByteChannel dst, ByteBuffer src) throws IOException {
+        while (src.hasRemaining())
+            dst.write(src);
+    }
+
+    public enum Format {
+        RAW, PGM, PNG
+    }
+
+    private static class BufferChannel implements WritableByteChannel {
+        private final ByteBuffer dst;
+
+        BufferChannel(ByteBuffer dst) {
+            this.dst = dst;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            dst.put(src);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * An atlas covering a fixed window of chunks that follows the robot instead of growing. Chunks
+ * live in a ring buffer addressed by their coordinates modulo the window size, so moving the
+ * window with {@link #recenter(int, int)} only drops the chunks falling out of it. Dropped chunks
+ * are handed to the archiver if any, then pooled and reused for the next promotions.
+ * <p>
+ * Updates outside the window are ignored. {@link #getCell(int, int)} and the setters of layers
+ * can not hand out cells there and throw {@link IndexOutOfBoundsException}. Cells leaving the
+ * window are not reported to cell listeners, {@link #getEvictionCount()} is what tells them, and
+ * are forgotten by the frontier index.
+ */
+public class RollingGridAtlas extends GridAtlas {
+    private final int width;
+    private final int height;
+    private final ChunkFilled[] ring;
+    private final ArrayDeque<ChunkFilled> pool = new ArrayDeque<>();
+    private int xOrigin, yOrigin;
+    private Archiver archiver;
+
+    public RollingGridAtlas(int chunkSize, int width, int height) {
+        this(ChunkGeometry.of(chunkSize), width, height);
+    }
+
+    /**
+     * @param width  width of the window in chunks
+     * @param height height of the window in chunks
+     */
+    public RollingGridAtlas(ChunkGeometry geometry, int width, int height) {
+        super(geometry);
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Illegal window size: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        ring = new ChunkFilled[width * height];
+        xOrigin = -(width / 2);
+        yOrigin = -(height / 2);
+    }
+
+    public void setArchiver(Archiver archiver) {
+        this.archiver = archiver;
+    }
+
+    /**
+     * Moves the window so that the chunk of cell {@code (x, y)} is in its middle.
+     */
+    public void recenter(int x, int y) {
+        int xo = getGeometry().chunkOf(x) - width / 2;
+        int yo = getGeometry().chunkOf(y) - height / 2;
+        if (xo == xOrigin && yo == yOrigin)
+            return;
+        xOrigin = xo;
+        yOrigin = yo;
+        for (int i = 0; i < ring.length; i++) {
+            ChunkFilled c = ring[i];
+            if (c != null && !inWindow(c.getX(), c.getY())) {
+                ring[i] = null;
+                if (archiver != null) {
+                    c.age();
+                    archiver.archive(c.getX(), c.getY(), c.counters);
+                }
+                pool.push(c);
+            }
+        }
+        if (isTrackingFrontiers())
+            getFrontiers().retain(xOrigin, xOrigin + width - 1, yOrigin, yOrigin + height - 1);
+        markEvicted();
+    }
+
+    @Override
+    protected int xMinChunk() {
+        return xOrigin;
+    }
+
+    @Override
+    protected int xMaxChunk() {
+        return xOrigin + width - 1;
+    }
+
+    @Override
+    protected int yMinChunk() {
+        return yOrigin;
+    }
+
+    @Override
+    protected int yMaxChunk() {
+        return yOrigin + height - 1;
+    }
+
+    @Override
+    protected Optional<Chunk> getChunkAt(int x, int y) {
+        if (!inWindow(x, y))
+            return Optional.empty();
+        ChunkFilled c = ring[slot(x, y)];
+        return Optional.of(c != null ? c : new ChunkEmpty(x, y));
+    }
+
+    @Override
+    ChunkFilled filledChunkAt(int x, int y) {
+        return ring[slot(x, y)];
+    }
+
+    @Override
+    protected void setChunkAt(int x, int y, Chunk c) {
+        if (!inWindow(x, y))
+            throw new IndexOutOfBoundsException();
+        int s = slot(x, y);
+        ChunkFilled old = ring[s];
+        ring[s] = c instanceof ChunkFilled ? (ChunkFilled) c : null;
+        markStored(x, y, old, c);
+    }
+
+    @Override
+    protected void removeChunkAt(int x, int y) {
+        if (!inWindow(x, y))
+            return;
+        int s = slot(x, y);
+        if (ring[s] != null)
+            pool.push(ring[s]);
+        ring[s] = null;
+    }
+
+    @Override
+    protected void forEachStored(Consumer<Chunk> action) {
+        for (ChunkFilled c : ring)
+            if (c != null)
+                action.accept(c);
+    }
+
+    @Override
+    public MemoryStats memoryStats() {
+        MemoryStats ret = new MemoryStats();
+        ret.addArray(ring.length);
+        for (ChunkFilled c : ring) {
+            if (c == null)
+                ret.addEmpty();
+            else
+                ret.addChunk(c);
+        }
+        for (ChunkFilled c : pool)
+            ret.addPooled(c);
+        return ret;
+    }
+
+    @Override
+    protected void trimStorage() {
+        pool.clear();
+    }
+
+    @Override
+    protected void expandTo(int x, int y) {
+    }
+
+    @Override
+    void expandToChunks(int xMin, int xMax, int yMin, int yMax) {
+    }
+
+    @Override
+    protected void expandX(boolean forward) {
+    }
+
+    @Override
+    protected void expandY(boolean forward) {
+    }
+
+    @Override
+    ChunkFilled newChunk(int x, int y) {
+        ChunkFilled c = pool.poll();
+        if (c == null)
+            return super.newChunk(x, y);
+        c.reset(x, y);
+        return c;
+    }
+
+    private boolean inWindow(int x, int y) {
+        return x >= xOrigin && x < xOrigin + width && y >= yOrigin && y < yOrigin + height;
+    }
+
+    private int slot(int x, int y) {
+        return Math.floorMod(x, width) * height + Math.floorMod(y, height);
+    }
+
+    /**
+     * Receives the chunks leaving the window. The counters are laid out as given by
+     * {@link GridAtlas#getGeometry()} and reused once the call returns.
+     */
+    public interface Archiver {
+        void archive(int xChunk, int yChunk, int[] counters);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.VarInt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Applies frames written by {@link TileEncoder} to a replica atlas. Every counter is written once
+ * with its final value, so listeners of the replica only see real transitions. Chunks falling
+ * outside the replica, e.g. a rolling window, are skipped.
+ */
+public class TileDecoder {
+    private final GridAtlas replica;
+    private long version = -1;
+
+    public TileDecoder(GridAtlas replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * @return the version of the source atlas the replica is in sync with
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Reads and applies one frame.
+     *
+     * @return false if the channel reached its end before a frame started
+     */
+    public boolean decode(ReadableByteChannel src) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        if (!readFully(src, length, true))
+            return false;
+        ByteBuffer frame = ByteBuffer.allocate(length.getInt(0));
+        readFully(src, frame, false);
+        frame.flip();
+        apply(frame);
+        return true;
+    }
+
+    /**
+     * Applies one frame, length prefix included.
+     */
+    public void decode(ByteBuffer src) {
+        int length = src.getInt();
+        ByteBuffer frame = src.slice();
+        frame.limit(length);
+        src.position(src.position() + length);
+        apply(frame);
+    }
+
+    private void apply(ByteBuffer in) {
+        int chunkSize = (int) VarInt.read(in);
+        if (chunkSize != replica.getChunkSize())
+            throw new IllegalArgumentException("Chunk size mismatch: " + chunkSize + " != " + replica.getChunkSize());
+        long v = VarInt.read(in);
+        int xMin = (int) VarInt.readSigned(in);
+        int xMax = (int) VarInt.readSigned(in);
+        int yMin = (int) VarInt.readSigned(in);
+        int yMax = (int) VarInt.readSigned(in);
+        replica.expandToChunks(xMin, xMax, yMin, yMax);
+        long count = VarInt.read(in);
+        int n = chunkSize * chunkSize;
+        int[] values = new int[n];
+        for (long k = 0; k < count; k++) {
+            int x = (int) VarInt.readSigned(in);
+            int y = (int) VarInt.readSigned(in);
+            int type = in.get();
+            Arrays.fill(values, 0);
+            if (type != TileEncoder.CLEAR)
+                readRuns(in, values);
+            Optional<GridAtlas.Chunk> o = replica.getChunkAt(x, y);
+            if (!o.isPresent() || type == TileEncoder.CLEAR && !(o.get() instanceof GridAtlas.ChunkFilled))
+                continue;
+            GridAtlas.ChunkFilled c = o.get().generate();
+            if (c != o.get())
+                replica.setChunkAt(x, y, c);
+            for (int i = 0; i < n; i++) {
+                int xRel = i % chunkSize;
+                int yRel = i / chunkSize;
+                if (type != TileEncoder.DELTA)
+                    c.setCounter(xRel, yRel, values[i]);
+                else if (values[i] != 0)
+                    c.setCounter(xRel, yRel, c.getCounterRel(xRel, yRel) + values[i]);
+            }
+        }
+        version = v;
+    }
+
+    private static void readRuns(ByteBuffer in, int[] values) {
+        int pos = 0;
+        while (pos < values.length) {
+            pos += (int) VarInt.read(in);
+            int run = (int) VarInt.read(in);
+            for (int i = 0; i < run; i++)
+                values[pos++] = (int) VarInt.readSigned(in);
+        }
+    }
+
+    private static boolean readFully(ReadableByteChannel src, ByteBuffer dst, boolean allowEof) throws IOException {
+        while (dst.hasRemaining()) {
+            if (src.read(dst) < 0) {
+                if (allowEof && dst.position() == 0)
+                    return false;
+                throw new EOFException();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.VarInt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Encodes the chunks of an atlas changed since the previous frame, to be applied on a replica by
+ * {@link TileDecoder}. The encoder keeps a copy of what it has sent, so a frame only carries
+ * the counters that differ from it.
+ * <p>
+ * A frame is a 4 byte length followed by: varint chunk size, varint atlas version, the zigzag
+ * chunk bounds of the atlas as x min, x max, y min and y max, varint chunk count, and for every
+ * chunk its zigzag coordinates, a type byte and, unless cleared, a list of
+ * runs: varint cells skipped, varint run length, then one zigzag value per cell of the run.
+ * Snapshot values replace the counters, delta values are added to them.
+ */
+public class TileEncoder {
+    static final int SNAPSHOT = 0;
+    static final int DELTA = 1;
+    static final int CLEAR = 2;
+
+    private final GridAtlas atlas;
+    private final HashMap<Long, int[]> sent = new HashMap<>();
+    private long version = -1;
+
+    public TileEncoder(GridAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Makes the next frame carry snapshots of every chunk, e.g. for a new replica.
+     */
+    public void reset() {
+        sent.clear();
+        version = -1;
+    }
+
+    public void encode(WritableByteChannel dst) throws IOException {
+        ByteBuffer buf = encode();
+        while (buf.hasRemaining())
+            dst.write(buf);
+    }
+
+    public void encode(ByteBuffer dst) {
+        dst.put(encode());
+    }
+
+    /**
+     * @return the next frame, length prefix included
+     */
+    public ByteBuffer encode() {
+        int chunkSize = atlas.getChunkSize();
+        int[] values = new int[chunkSize * chunkSize];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int count = 0;
+        List<GridAtlas.ChunkFilled> changed = new ArrayList<>();
+        atlas.forEachStored(c -> {
+            if (c instanceof GridAtlas.ChunkFilled && ((GridAtlas.ChunkFilled) c).version > version)
+                changed.add((GridAtlas.ChunkFilled) c);
+        });
+        for (GridAtlas.ChunkFilled c : changed) {
+            long key = GridAtlas.pack(c.getX(), c.getY());
+            int[] old = sent.get(key);
+            int[] now = new int[chunkSize * chunkSize];
+            boolean dirty = false;
+            for (int y = 0; y < chunkSize; y++) {
+                for (int x = 0; x < chunkSize; x++) {
+                    int n = y * chunkSize + x;
+                    now[n] = c.getCounterRel(x, y);
+                    values[n] = old == null ? now[n] : now[n] - old[n];
+                    dirty |= values[n] != 0;
+                }
+            }
+            if (!dirty && old != null)
+                continue;
+            writeHeader(body, c.getX(), c.getY(), old == null ? SNAPSHOT : DELTA);
+            writeRuns(body, values);
+            sent.put(key, now);
+            count++;
+        }
+        Iterator<Map.Entry<Long, int[]>> it = sent.entrySet().iterator();
+        while (it.hasNext()) {
+            long key = it.next().getKey();
+            int x = GridAtlas.unpackX(key);
+            int y = GridAtlas.unpackY(key);
+            Optional<GridAtlas.Chunk> c = atlas.getChunkAt(x, y);
+            if (!c.isPresent() || !(c.get() instanceof GridAtlas.ChunkFilled)) {
+                writeHeader(body, x, y, CLEAR);
+                it.remove();
+                count++;
+            }
+        }
+        version = atlas.getVersion();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        VarInt.write(head, chunkSize);
+        VarInt.write(head, version);
+        VarInt.writeSigned(head, atlas.xMinChunk());
+        VarInt.writeSigned(head, atlas.xMaxChunk());
+        VarInt.writeSigned(head, atlas.yMinChunk());
+        VarInt.writeSigned(head, atlas.yMaxChunk());
+        VarInt.write(head, count);
+        ByteBuffer ret = ByteBuffer.allocate(4 + head.size() + body.size());
+        ret.putInt(head.size() + body.size()).put(head.toByteArray()).put(body.toByteArray()).flip();
+        return ret;
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, int x, int y, int type) {
+        VarInt.writeSigned(out, x);
+        VarInt.writeSigned(out, y);
+        out.write(type);
+    }
+
+    private static void writeRuns(ByteArrayOutputStream out, int[] values) {
+        int i = 0;
+        while (i < values.length) {
+            int skip = i;
+            while (skip < values.length && values[skip] == 0)
+                skip++;
+            if (skip == values.length)
+                break;
+            int end = skip;
+            while (end < values.length && values[end] != 0)
+                end++;
+            VarInt.write(out, skip - i);
+            VarInt.write(out, end - skip);
+            for (int j = skip; j < end; j++)
+                VarInt.writeSigned(out, values[j]);
+            i = end;
+        }
+        if (i < values.length) {
+            VarInt.write(out, values.length - i);
+            VarInt.write(out, 0);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+import io.github.hellorobotics.lib.util.RadixQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A* planner treating counters as traversal costs instead of obstacles, so that paths keep away
+ * from cells often seen occupied when there is room to. Cells with a counter at or above the
+ * blocked threshold, and cells outside the atlas, are not traversable.
+ * <p>
+ * Moves are 8-connected without cutting corners. Costs are fixed point with {@link #STRAIGHT} for
+ * a free straight step, a diagonal step costing the cost of its cell times the square root of 2,
+ * and the octile distance as heuristic. The cost of every cell of a chunk is cached and computed
+ * again once the chunk has changed.
+ */
+public class WeightedPlanner {
+    public static final int STRAIGHT = 1024;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int DIAGONAL = 1448;
+    private static final int MAX_COST = STRAIGHT << 6;
+    private static final int BLOCKED = -1;
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+
+    private final GridAtlas atlas;
+    private final ChunkGeometry geometry;
+    private final int size;
+    private final CostFunction cost;
+    private final int blockedThreshold;
+    private final int[] emptyCosts;
+    private final HashMap<Long, Costs> cache = new HashMap<>();
+    private final HashMap<Long, Block> blocks = new HashMap<>();
+    private final List<Block> blockList = new ArrayList<>();
+    private int[] nodeBlock = new int[64];
+    private int[] nodeCell = new int[64];
+    private int nodes;
+    private int pathCost = UNREACHABLE;
+
+    /**
+     * @param blockedThreshold the lowest counter making a cell not traversable, at least 1
+     */
+    public WeightedPlanner(GridAtlas atlas, CostFunction cost, int blockedThreshold) {
+        if (blockedThreshold < 1)
+            throw new IllegalArgumentException("Illegal blocked threshold: " + blockedThreshold);
+        this.atlas = atlas;
+        this.geometry = atlas.getGeometry();
+        this.size = geometry.size();
+        this.cost = cost;
+        this.blockedThreshold = blockedThreshold;
+        emptyCosts = new int[geometry.cells()];
+        Arrays.fill(emptyCosts, cellCost(0));
+    }
+
+    /**
+     * @return the cells from start to goal, both included, or an empty list if there is no path
+     */
+    public List<Point> plan(int xStart, int yStart, int xGoal, int yGoal) {
+        pathCost = UNREACHABLE;
+        try {
+            Block start = block(xStart, yStart);
+            Block goal = block(xGoal, yGoal);
+            if (start == null || goal == null)
+                return Collections.emptyList();
+            int is = geometry.index(geometry.offsetOf(xStart), geometry.offsetOf(yStart));
+            int ig = geometry.index(geometry.offsetOf(xGoal), geometry.offsetOf(yGoal));
+            if (start.cost[is] == BLOCKED || goal.cost[ig] == BLOCKED)
+                return Collections.emptyList();
+            RadixQueue open = new RadixQueue();
+            start.g[is] = 0;
+            open.push(heuristic(xStart, yStart, xGoal, yGoal), node(start, is));
+            while (!open.isEmpty()) {
+                long e = open.pop();
+                Block b = blockList.get(nodeBlock[RadixQueue.value(e)]);
+                int i = nodeCell[RadixQueue.value(e)];
+                int x = b.x * size + geometry.xOf(i);
+                int y = b.y * size + geometry.yOf(i);
+                int g = b.g[i];
+                if (RadixQueue.key(e) != g + heuristic(x, y, xGoal, yGoal))
+                    continue;
+                if (b == goal && i == ig) {
+                    pathCost = g;
+                    return path(goal, ig);
+                }
+                for (int d = 0; d < 8; d++) {
+                    int nx = x + DX[d];
+                    int ny = y + DY[d];
+                    Block nb = block(b, nx, ny);
+                    if (nb == null)
+                        continue;
+                    int ni = geometry.index(geometry.offsetOf(nx), geometry.offsetOf(ny));
+                    int c = nb.cost[ni];
+                    if (c == BLOCKED)
+                        continue;
+                    if (d >= 4) {
+                        if (isBlocked(b, nx, y) || isBlocked(b, x, ny))
+                            continue;
+                        c = (int) ((long) c * DIAGONAL / STRAIGHT);
+                    }
+                    if (g + c < nb.g[ni]) {
+                        nb.g[ni] = g + c;
+                        nb.from[ni] = (byte) d;
+                        open.push(g + c + heuristic(nx, ny, xGoal, yGoal), node(nb, ni));
+                    }
+                }
+            }
+            return Collections.emptyList();
+        } finally {
+            blocks.clear();
+            blockList.clear();
+            nodes = 0;
+        }
+    }
+
+    /**
+     * @return the cost of the last path planned, in units of {@link #STRAIGHT}, or
+     * {@link #UNREACHABLE} if there was none
+     */
+    public int getPathCost() {
+        return pathCost;
+    }
+
+    /**
+     * Drops the cached costs, to be called after changing what the cost function returns.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    private List<Point> path(Block b, int i) {
+        List<Point> ret = new ArrayList<>();
+        int x = b.x * size + geometry.xOf(i);
+        int y = b.y * size + geometry.yOf(i);
+        while (true) {
+            ret.add(new Point(x, y));
+            int d = b.from[i];
+            if (d < 0)
+                break;
+            x -= DX[d];
+            y -= DY[d];
+            b = block(b, x, y);
+            i = geometry.index(geometry.offsetOf(x), geometry.offsetOf(y));
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    // The id of a cell in the queue, given when the cell is first reached.
+    private int node(Block b, int i) {
+        if (b.node[i] < 0) {
+            if (nodes == nodeBlock.length) {
+                nodeBlock = Arrays.copyOf(nodeBlock, nodes * 2);
+                nodeCell = Arrays.copyOf(nodeCell, nodes * 2);
+            }
+            nodeBlock[nodes] = b.id;
+            nodeCell[nodes] = i;
+            b.node[i] = nodes++;
+        }
+        return b.node[i];
+    }
+
+    private static int heuristic(int x, int y, int xGoal, int yGoal) {
+        int dx = Math.abs(x - xGoal);
+        int dy = Math.abs(y - yGoal);
+        return STRAIGHT * Math.max(dx, dy) + (DIAGONAL - STRAIGHT) * Math.min(dx, dy);
+    }
+
+    private boolean isBlocked(Block b, int x, int y) {
+        Block nb = block(b, x, y);
+        return nb == null || nb.cost[geometry.index(geometry.offsetOf(x), geometry.offsetOf(y))] == BLOCKED;
+    }
+
+    // The block of a cell, looked up only if it is not the one given.
+    private Block block(Block b, int x, int y) {
+        if (geometry.chunkOf(x) == b.x && geometry.chunkOf(y) == b.y)
+            return b;
+        return block(x, y);
+    }
+
+    private Block block(int x, int y) {
+        int xChunk = geometry.chunkOf(x);
+        int yChunk = geometry.chunkOf(y);
+        long k = GridAtlas.pack(xChunk, yChunk);
+        Block ret = blocks.get(k);
+        if (ret == null) {
+            int[] c = costs(xChunk, yChunk);
+            if (c == null)
+                return null;
+            ret = new Block(blockList.size(), xChunk, yChunk, c);
+            blocks.put(k, ret);
+            blockList.add(ret);
+        }
+        return ret;
+    }
+
+    private int[] costs(int xChunk, int yChunk) {
+        if (xChunk < atlas.xMinChunk() || xChunk > atlas.xMaxChunk() || yChunk < atlas.yMinChunk() || yChunk > atlas.yMaxChunk())
+            return null;
+        long k = GridAtlas.pack(xChunk, yChunk);
+        GridAtlas.ChunkFilled c = atlas.filledChunkAt(xChunk, yChunk);
+        if (c == null) {
+            cache.remove(k);
+            return emptyCosts;
+        }
+        c.age();
+        Costs ret = cache.get(k);
+        if (ret == null || ret.chunk != c || ret.version != c.version || ret.agedEpoch != c.agedEpoch) {
+            int[] cost = ret != null ? ret.cost : new int[c.counters.length];
+            for (int i = 0; i < cost.length; i++)
+                cost[i] = c.counters[i] >= blockedThreshold ? BLOCKED : cellCost(c.counters[i]);
+            ret = new Costs(c, c.version, c.agedEpoch, cost);
+            cache.put(k, ret);
+        }
+        return ret.cost;
+    }
+
+    private int cellCost(int counter) {
+        double p = cost.penalty(counter);
+        if (!(p > 0))
+            return STRAIGHT;
+        return (int) Math.min(MAX_COST, STRAIGHT + Math.round(p * STRAIGHT));
+    }
+
+    private static class Costs {
+        final GridAtlas.ChunkFilled chunk;
+        final long version;
+        final long agedEpoch;
+        final int[] cost;
+
+        Costs(GridAtlas.ChunkFilled chunk, long version, long agedEpoch, int[] cost) {
+            this.chunk = chunk;
+            this.version = version;
+            this.agedEpoch = agedEpoch;
+            this.cost = cost;
+        }
+    }
+
+    // Search state of a chunk, alive for one call to plan.
+    private static class Block {
+        final int id;
+        final int x;
+        final int y;
+        final int[] cost;
+        final int[] g;
+        final byte[] from;
+        final int[] node;
+
+        Block(int id, int x, int y, int[] cost) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.cost = cost;
+            g = new int[cost.length];
+            Arrays.fill(g, UNREACHABLE);
+            from = new byte[cost.length];
+            Arrays.fill(from, (byte) -1);
+            node = new int[cost.length];
+            Arrays.fill(node, -1);
+        }
+    }
+}
@@ -118,6 +118,11 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
             return Optional.empty();
     }
 
+    @Override
+    public E getOrNull(int index) {
+        return rangeCheckForGet(index) ? elementData(index - offset) : null;
+    }
+
     @Override
     public Optional<E> set(int index, E e) {
         if (!rangeCheckForSet(index))
@@ -130,6 +135,58 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
         return Optional.ofNullable(oldValue);
     }
 
+    /**
+     * Makes room for indices from {@code start} to {@code end} so they can be set or added later
+     * without growing again. Grows the backing array at most once.
+     */
+    @Override
+    public void reserve(int start, int end) {
+        if (start > end)
+            throw new IllegalArgumentException("Illegal Range: [" + start + ", " + end + "].");
+        if (size == 0)
+            offset = start - this.start;
+        int front = Math.max(0, start() - start);
+        int back = Math.max(0, end - end());
+        if (this.start < front || elementData.length - this.start - size < back)
+            grow(front, back);
+    }
+
+    /**
+     * Extends the range to cover indices from {@code start} to {@code end}, new slots being null.
+     */
+    @Override
+    public void ensureRange(int start, int end) {
+        reserve(start, end);
+        int front = Math.max(0, start() - start);
+        int back = Math.max(0, end - end());
+        if (front + back == 0)
+            return;
+        modCount++;
+        this.start -= front;
+        size += front + back;
+    }
+
+    /**
+     * @return the number of elements the backing array holds without growing
+     */
+    @Override
+    public int capacity() {
+        return elementData.length;
+    }
+
+    /**
+     * Shrinks the backing array to the current range, indices staying the same.
+     */
+    @Override
+    public void trimToSize() {
+        if (elementData.length == size)
+            return;
+        modCount++;
+        elementData = size == 0 ? EMPTY_ELEMENT : Arrays.copyOfRange(elementData, start, start + size);
+        offset += start;
+        start = 0;
+    }
+
     @Override
     public int start() {
         return start + offset;
@@ -367,6 +424,21 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
         elementData = buf;
     }
 
+    private void grow(int front, int back) {
+        modCount++;
+        long needed = (long) size + front + back;
+        long dest = Math.min(MAX_ARRAY_SIZE, needed + (needed >> 1) + 2);
+        if (needed > MAX_ARRAY_SIZE)
+            throw new OutOfMemoryError();
+        int slack = (int) (dest - needed);
+        Object[] buf = new Object[(int) dest];
+        int newStart = front + slack / 2;
+        System.arraycopy(elementData, start, buf, newStart, size);
+        offset = offset + start - newStart;
+        start = newStart;
+        elementData = buf;
+    }
+
     private boolean rangeCheckForGet(int index) {
         return !(index >= offset + start + size || index < offset + start);
     }
@@ -400,7 +472,7 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
         }
 
         ArraySectionIterator(int index) {
-            if (!rangeCheckForGet(index))
+            if (!rangeCheckForGet(index) && index != offset + start + size)
                 throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
             cursor = index;
             lastRet = Integer.MAX_VALUE;
@@ -414,18 +486,11 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
         @Override
         public E previous() {
             checkForComodification();
-            try {
-                int i = cursor - 1;
-                Optional<E> previous = get(i);
-                lastRet = cursor = i;
-                if (previous.isPresent())
-                    return previous.get();
-                else
-                    throw new IllegalStateException("Internal error");
-            } catch (IndexOutOfBoundsException e) {
-                checkForComodification();
+            int i = cursor - 1;
+            if (!rangeCheckForGet(i))
                 throw new NoSuchElementException();
-            }
+            lastRet = cursor = i;
+            return elementData(i - offset);
         }
 
         @Override
@@ -460,20 +525,12 @@ public class ArraySection<E> implements Section<E>, Cloneable, Serializable {
         @Override
         public E next() {
             checkForComodification();
-            try {
-                int i = cursor;
-                Optional<E> next = get(i);
-                lastRet = i;
-                cursor = i + 1;
-                if (next.isPresent()) {
-                    return next.get();
-                } else {
-                    throw new IllegalStateException("Internal error.");
-                }
-            } catch (IndexOutOfBoundsException e) {
-                checkForComodification();
+            int i = cursor;
+            if (!rangeCheckForGet(i))
                 throw new NoSuchElementException();
-            }
+            lastRet = i;
+            cursor = i + 1;
+            return elementData(i - offset);
         }
 
         final void checkForComodification() {
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.util;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link Section} safe to share between threads. The backing array and the range in use are
+ * published together as one immutable state, so reads never lock: they take the current state
+ * and read its slots. Writers are serialized, store slots before publishing a range covering them
+ * and swap in a new array when growing, which readers of the old one do not notice.
+ * <p>
+ * Iterators are weakly consistent: they walk the range at the time they were created, see some
+ * of the writes made since and never throw {@link java.util.ConcurrentModificationException}.
+ */
+public class ConcurrentArraySection<E> implements Section<E> {
+    private final Object lock = new Object();
+    private volatile State<E> state;
+
+    public ConcurrentArraySection() {
+        this(0);
+    }
+
+    public ConcurrentArraySection(int initialIndex) {
+        state = new State<>(new AtomicReferenceArray<>(0), initialIndex, 0, 0);
+    }
+
+    @Override
+    public E remove(boolean forward) {
+        synchronized (lock) {
+            State<E> s = state;
+            if (s.size == 0)
+                throw new IndexOutOfBoundsException("The container is empty");
+            int i = forward ? s.start + s.size - 1 : s.start;
+            state = new State<>(s.data, s.offset, forward ? s.start : s.start + 1, s.size - 1);
+            return s.data.getAndSet(i, null);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c, boolean forward) {
+        Object[] a = c.toArray();
+        synchronized (lock) {
+            State<E> s = forward ? grow(state, 0, a.length) : grow(state, a.length, 0);
+            for (int i = 0; i < a.length; i++)
+                s.data.set(forward ? s.start + s.size + i : s.start - 1 - i, cast(a[i]));
+            state = new State<>(s.data, s.offset, forward ? s.start : s.start - a.length, s.size + a.length);
+        }
+        return a.length != 0;
+    }
+
+    @Override
+    public boolean add(E e, boolean forward) {
+        synchronized (lock) {
+            State<E> s = forward ? grow(state, 0, 1) : grow(state, 1, 0);
+            s.data.set(forward ? s.start + s.size : s.start - 1, e);
+            state = new State<>(s.data, s.offset, forward ? s.start : s.start - 1, s.size + 1);
+        }
+        return true;
+    }
+
+    @Override
+    public Optional<E> get(int index) {
+        State<E> s = state;
+        int i = index - s.offset;
+        if (i < s.start || i >= s.start + s.size)
+            return Optional.empty();
+        return Optional.ofNullable(s.data.get(i));
+    }
+
+    @Override
+    public E getOrNull(int index) {
+        State<E> s = state;
+        int i = index - s.offset;
+        return i < s.start || i >= s.start + s.size ? null : s.data.get(i);
+    }
+
+    @Override
+    public Optional<E> set(int index, E e) {
+        synchronized (lock) {
+            State<E> s = state;
+            if (index >= s.start() && index <= s.end())
+                return Optional.ofNullable(s.data.getAndSet(index - s.offset, e));
+            if (index == s.end() + 1)
+                add(e, true);
+            else if (index == s.start() - 1)
+                add(e, false);
+            else
+                throw new IndexOutOfBoundsException("Index: " + index + ", Range: [" + s.start() + ", " + s.end() + "].");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Makes room for indices from {@code start} to {@code end} so they can be set or added later
+     * without growing again.
+     */
+    @Override
+    public void reserve(int start, int end) {
+        if (start > end)
+            throw new IllegalArgumentException("Illegal Range: [" + start + ", " + end + "].");
+        synchronized (lock) {
+            State<E> s = state;
+            if (s.size == 0)
+                s = state = new State<>(s.data, start - s.start, s.start, 0);
+            grow(s, Math.max(0, s.start() - start), Math.max(0, end - s.end()));
+        }
+    }
+
+    /**
+     * Extends the range to cover indices from {@code start} to {@code end}, new slots being null.
+     */
+    @Override
+    public void ensureRange(int start, int end) {
+        synchronized (lock) {
+            reserve(start, end);
+            State<E> s = state;
+            int front = Math.max(0, s.start() - start);
+            int back = Math.max(0, end - s.end());
+            if (front + back != 0)
+                state = new State<>(s.data, s.offset, s.start - front, s.size + front + back);
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return state.data.length();
+    }
+
+    @Override
+    public void trimToSize() {
+        synchronized (lock) {
+            State<E> s = state;
+            if (s.data.length() != s.size)
+                state = s.copy(0, s.size);
+        }
+    }
+
+    @Override
+    public int start() {
+        return state.start();
+    }
+
+    @Override
+    public int end() {
+        return state.end();
+    }
+
+    @Override
+    public int size() {
+        return state.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return state.size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        State<E> s = state;
+        for (int i = s.start; i < s.start + s.size; i++) {
+            E e = s.data.get(i);
+            if (o == null ? e == null : o.equals(e))
+                return i + s.offset;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        State<E> s = state;
+        for (int i = s.start + s.size - 1; i >= s.start; i--) {
+            E e = s.data.get(i);
+            if (o == null ? e == null : o.equals(e))
+                return i + s.offset;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Map<Integer, E> toMap() {
+        State<E> s = state;
+        HashMap<Integer, E> ret = new HashMap<>(s.size);
+        for (int i = s.start; i < s.start + s.size; i++)
+            ret.put(i + s.offset, s.data.get(i));
+        return ret;
+    }
+
+    @Override
+    public SectionIterator<E> sectionIterator() {
+        State<E> s = state;
+        return new Itr(s, s.start());
+    }
+
+    @Override
+    public SectionIterator<E> sectionIterator(int index) {
+        State<E> s = state;
+        if (index < s.start() || index > s.end() + 1)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Range: [" + s.start() + ", " + s.end() + "].");
+        return new Itr(s, index);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return sectionIterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        State<E> s = state;
+        Object[] ret = new Object[s.size];
+        for (int i = 0; i < s.size; i++)
+            ret[i] = s.data.get(s.start + i);
+        return ret;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] src = toArray();
+        if (a.length < src.length)
+            a = (T[]) Array.newInstance(a.getClass().getComponentType(), src.length);
+        System.arraycopy(src, 0, a, 0, src.length);
+        if (a.length > src.length)
+            a[src.length] = null;
+        return a;
+    }
+
+    @Override
+    public boolean add(E e) {
+        return add(e, true);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object e : c)
+            if (!contains(e))
+                return false;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        return addAll(c, true);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            State<E> s = state;
+            state = new State<>(s.data, s.offset, s.start, 0);
+            for (int i = s.start; i < s.start + s.size; i++)
+                s.data.set(i, null);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (E e : this)
+            hashCode = 31 * hashCode + (e == null ? 0 : e.hashCode());
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Section))
+            return false;
+        Iterator<E> e1 = iterator();
+        Iterator<?> e2 = ((Section<?>) o).iterator();
+        while (e1.hasNext() && e2.hasNext()) {
+            E o1 = e1.next();
+            Object o2 = e2.next();
+            if (!(o1 == null ? o2 == null : o1.equals(o2)))
+                return false;
+        }
+        return !(e1.hasNext() || e2.hasNext());
+    }
+
+    // Publishes a bigger array if the free slots at either end are not enough, with lock held.
+    private State<E> grow(State<E> s, int front, int back) {
+        if (s.start >= front && s.data.length() - s.start - s.size >= back)
+            return s;
+        long needed = (long) s.size + front + back;
+        if (needed > Integer.MAX_VALUE - 8)
+            throw new OutOfMemoryError();
+        long dest = Math.min(Integer.MAX_VALUE - 8, needed + (needed >> 1) + 2);
+        state = s.copy(front + (int) (dest - needed) / 2, (int) dest);
+        return state;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E cast(Object o) {
+        return (E) o;
+    }
+
+    private static final class State<E> {
+        final AtomicReferenceArray<E> data;
+        final int offset;
+        final int start;
+        final int size;
+
+        State(AtomicReferenceArray<E> data, int offset, int start, int size) {
+            this.data = data;
+            this.offset = offset;
+            this.start = start;
+            this.size = size;
+        }
+
+        int start() {
+            return offset + start;
+        }
+
+        int end() {
+            return offset + start + size - 1;
+        }
+
+        // The same elements moved to a new array of the given length, first one at newStart.
+        State<E> copy(int newStart, int length) {
+            AtomicReferenceArray<E> buf = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < size; i++)
+                buf.lazySet(newStart + i, data.get(start + i));
+            return new State<>(buf, offset + start - newStart, newStart, size);
+        }
+    }
+
+    private class Itr implements SectionIterator<E> {
+        final State<E> s;
+        int cursor;
+        int lastRet = Integer.MAX_VALUE;
+
+        Itr(State<E> s, int index) {
+            this.s = s;
+            this.cursor = index;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor != s.start();
+        }
+
+        @Override
+        public E previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            lastRet = --cursor;
+            return s.data.get(cursor - s.offset);
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void set(E e) {
+            if (lastRet == Integer.MAX_VALUE)
+                throw new IllegalStateException();
+            ConcurrentArraySection.this.set(lastRet, e);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor != s.end() + 1;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastRet = cursor;
+            return s.data.get(cursor++ - s.offset);
+        }
+    }
+}
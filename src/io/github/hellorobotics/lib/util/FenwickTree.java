@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.util;
+
+/**
+ * Prefix sums of non-negative long weights with O(log n) update, query and weighted lookup.
+ */
+public class FenwickTree {
+    private final long[] tree;
+    private final int top;
+
+    /**
+     * Builds the tree in linear time.
+     */
+    public FenwickTree(long[] weights) {
+        tree = new long[weights.length + 1];
+        System.arraycopy(weights, 0, tree, 1, weights.length);
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length)
+                tree[parent] += tree[i];
+        }
+        top = weights.length == 0 ? 0 : Integer.highestOneBit(weights.length);
+    }
+
+    public int size() {
+        return tree.length - 1;
+    }
+
+    public void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i)
+            tree[i] += delta;
+    }
+
+    /**
+     * @return the sum of weights before {@code index}
+     */
+    public long prefix(int index) {
+        long sum = 0;
+        for (int i = index; i > 0; i -= i & -i)
+            sum += tree[i];
+        return sum;
+    }
+
+    public long sum() {
+        return prefix(size());
+    }
+
+    /**
+     * @return the index whose weight covers {@code target}, that is the highest index with a
+     * prefix not above it, for a target in [0, sum)
+     */
+    public int find(long target) {
+        int pos = 0;
+        for (int step = top; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return pos;
+    }
+}
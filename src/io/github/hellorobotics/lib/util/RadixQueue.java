@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Monotone priority queue of non-negative int keys with int values, as used by Dijkstra.
+ * Keys pushed must not be lower than the last key popped. Entries are packed in longs,
+ * see {@link #key(long)} and {@link #value(long)}.
+ */
+public class RadixQueue {
+    private final long[][] buckets = new long[33][];
+    private final int[] sizes = new int[33];
+    private int last;
+    private int size;
+
+    public RadixQueue() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new long[4];
+    }
+
+    public static int key(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    public static int value(long entry) {
+        return (int) entry;
+    }
+
+    public void push(int key, int value) {
+        if (key < last)
+            throw new IllegalArgumentException("Key " + key + " is lower than the last popped " + last);
+        add(bucket(key), (long) key << 32 | (value & 0xFFFFFFFFL));
+        size++;
+    }
+
+    public long pop() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        if (sizes[0] == 0) {
+            int i = 1;
+            while (sizes[i] == 0)
+                i++;
+            long[] b = buckets[i];
+            int n = sizes[i];
+            int min = Integer.MAX_VALUE;
+            for (int j = 0; j < n; j++)
+                min = Math.min(min, key(b[j]));
+            last = min;
+            sizes[i] = 0;
+            for (int j = 0; j < n; j++)
+                add(bucket(key(b[j])), b[j]);
+        }
+        size--;
+        return buckets[0][--sizes[0]];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(sizes, 0);
+        size = 0;
+        last = 0;
+    }
+
+    private int bucket(int key) {
+        return key == last ? 0 : 32 - Integer.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void add(int bucket, long entry) {
+        if (sizes[bucket] == buckets[bucket].length)
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], sizes[bucket] * 2);
+        buckets[bucket][sizes[bucket]++] = entry;
+    }
+}
@@ -33,6 +33,13 @@ public interface Section<E> extends Collection<E> {
 
     Optional<E> get(int index);
 
+    /**
+     * Same as {@link #get(int)} without wrapping, for lookups that must not allocate.
+     *
+     * @return the element, or null if there is none or the index is out of the range
+     */
+    E getOrNull(int index);
+
     Optional<E> set(int index, E e);
 
     int start();
@@ -48,4 +55,12 @@ public interface Section<E> extends Collection<E> {
     SectionIterator<E> sectionIterator();
 
     SectionIterator<E> sectionIterator(int index);
+
+    void reserve(int start, int end);
+
+    void ensureRange(int start, int end);
+
+    int capacity();
+
+    void trimToSize();
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable length integers, with zigzag coding for signed values.
+ */
+public final class VarInt {
+    private VarInt() {
+    }
+
+    public static void write(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static void writeSigned(ByteArrayOutputStream out, long value) {
+        write(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long read(ByteBuffer in) {
+        long ret = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            ret |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return ret;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static long readSigned(ByteBuffer in) {
+        long v = read(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares the components kept by {@link Connectivity} with a flood fill of the atlas, while the
+ * atlas grows or its window moves.
+ */
+public class ConnectivityTest {
+    public static void main(String[] args) {
+        for (long seed = 0; seed < 8; seed++) {
+            matchesFloodFill(new GridAtlas(4), seed, false);
+            matchesFloodFill(new RollingGridAtlas(4, 5, 5), seed, true);
+        }
+        System.out.println("ConnectivityTest passed");
+    }
+
+    private static void matchesFloodFill(GridAtlas atlas, long seed, boolean rolling) {
+        Random random = new Random(seed);
+        Connectivity connectivity = new Connectivity(atlas);
+        int radius = 4;
+        for (int step = 0; step < 400; step++) {
+            if (rolling && random.nextInt(20) == 0)
+                ((RollingGridAtlas) atlas).recenter(random.nextInt(20) - 10, random.nextInt(20) - 10);
+            if (!rolling && random.nextInt(10) == 0)
+                radius += 2;
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            // Walls along a line make components split and join again.
+            boolean up = random.nextInt(3) != 0;
+            for (int k = random.nextInt(6); k >= 0; k--)
+                atlas.updateCell(x, y + k, up);
+            if (step % 3 == 0)
+                assertSame(atlas, connectivity, "seed " + seed + " step " + step + (rolling ? " rolling" : ""));
+        }
+    }
+
+    private static void assertSame(GridAtlas atlas, Connectivity connectivity, String where) {
+        HashMap<Long, Integer> fill = new HashMap<>();
+        HashMap<Integer, Integer> forward = new HashMap<>();
+        HashMap<Integer, Integer> backward = new HashMap<>();
+        int next = 0;
+        for (int x = atlas.xMin(); x <= atlas.xMax(); x++) {
+            for (int y = atlas.yMin(); y <= atlas.yMax(); y++) {
+                int id = connectivity.componentOf(x, y);
+                if (atlas.getCounterAt(x, y) != 0) {
+                    check(id == -1, where + ": blocked cell (" + x + ", " + y + ") in component " + id);
+                    continue;
+                }
+                if (!fill.containsKey(GridAtlas.pack(x, y)))
+                    flood(atlas, x, y, next++, fill);
+                int expected = fill.get(GridAtlas.pack(x, y));
+                check(forward.computeIfAbsent(id, k -> expected) == expected &&
+                                backward.computeIfAbsent(expected, k -> id) == id,
+                        where + ": cell (" + x + ", " + y + ") in the wrong component");
+            }
+        }
+    }
+
+    private static void flood(GridAtlas atlas, int x, int y, int id, HashMap<Long, Integer> fill) {
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        fill.put(GridAtlas.pack(x, y), id);
+        queue.add(GridAtlas.pack(x, y));
+        int[][] d = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            long k = queue.poll();
+            for (int[] o : d) {
+                int nx = GridAtlas.unpackX(k) + o[0];
+                int ny = GridAtlas.unpackY(k) + o[1];
+                if (atlas.getCounterAt(nx, ny) == 0 && fill.putIfAbsent(GridAtlas.pack(nx, ny), id) == null)
+                    queue.add(GridAtlas.pack(nx, ny));
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that decay does not depend on how often chunks are read, and that listeners hear about
+ * it once chunks are written or compacted, never from reads.
+ */
+public class DecayTest {
+    public static void main(String[] args) {
+        readsDoNotChangeDecay(DecayPolicy.halving(4), 16, 8);
+        readsDoNotChangeDecay(DecayPolicy.halving(3), 1000, 20);
+        readsDoNotChangeDecay(DecayPolicy.linear(3), 100, 20);
+        listenersHearDecay();
+        linearSaturated();
+        System.out.println("DecayTest passed");
+    }
+
+    private static void readsDoNotChangeDecay(DecayPolicy policy, int counter, int epochs) {
+        GridAtlas atlas = new GridAtlas(8);
+        atlas.setDecay(policy);
+        for (int i = 0; i < counter; i++) {
+            atlas.updateCell(1, 1, true);
+            atlas.updateCell(20, 20, true);
+        }
+        List<Integer> read = new ArrayList<>();
+        for (int e = 0; e < epochs; e++) {
+            atlas.advanceEpoch();
+            read.add(atlas.getCounterAt(1, 1));
+            atlas.getCell(1, 1).getAccessibleCells();
+        }
+        int expected = policy.decay(counter, epochs / policy.period() * policy.period());
+        check(atlas.getCounterAt(1, 1) == expected, "read chunk: " + read + ", expected " + expected);
+        check(atlas.getCounterAt(20, 20) == expected, "unread chunk: " + atlas.getCounterAt(20, 20) + ", expected " + expected);
+    }
+
+    private static void listenersHearDecay() {
+        GridAtlas atlas = new GridAtlas(8);
+        atlas.updateCell(-20, -20, false);
+        atlas.updateCell(20, 20, false);
+        for (int y = atlas.yMin(); y <= atlas.yMax(); y++)
+            atlas.updateCell(5, y, true);
+        IncrementalPlanner planner = new IncrementalPlanner(atlas, 0, 0, 10, 0);
+        check(!planner.replan(), "goal reachable through the wall");
+        List<Long> freed = new ArrayList<>();
+        atlas.addCellListener((x, y, blocked) -> {
+            if (!blocked)
+                freed.add(GridAtlas.pack(x, y));
+        });
+        atlas.setDecay(DecayPolicy.linear(1));
+        long version = atlas.getVersion();
+        atlas.advanceEpoch();
+        check(atlas.filledChunkAt(0, 0).agedEpoch == 0, "advancing the epoch aged a chunk");
+        check(atlas.getCounterAt(5, 0) == 0, "reads do not show the decay");
+        atlas.getCell(5, 0).getAccessibleCells();
+        check(freed.isEmpty() && atlas.getVersion() == version, "reads changed the atlas");
+        atlas.updateCell(4, 0, true);
+        check(freed.size() == 8 && freed.contains(GridAtlas.pack(5, 0)), "write reported " + freed.size() + " cells");
+        atlas.compactIdle(0);
+        check(freed.size() == atlas.yMax() - atlas.yMin() + 1, "freed " + freed.size() + " cells");
+        check(planner.replan(), "goal not reachable once the wall decayed");
+    }
+
+    private static void linearSaturated() {
+        DecayPolicy policy = DecayPolicy.linear(3);
+        check(policy.decay(Integer.MAX_VALUE, 1) == Integer.MAX_VALUE - 3, "saturated counter wiped");
+        check(policy.decay(7, 2) == 1 && policy.decay(7, 3) == 0, "wrong linear decay");
+        try {
+            DecayPolicy.linear(0);
+            throw new AssertionError("step 0 accepted");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.Random;
+
+/**
+ * Compares the costs repaired by {@link FlowField} with a field computed from scratch, while the
+ * atlas grows.
+ */
+public class FlowFieldTest {
+    public static void main(String[] args) {
+        goalComesInside();
+        for (long seed = 0; seed < 8; seed++)
+            matchesCompute(seed);
+        System.out.println("FlowFieldTest passed");
+    }
+
+    private static void goalComesInside() {
+        GridAtlas atlas = new GridAtlas(8);
+        FlowField field = new FlowField(atlas, 100, 100);
+        check(field.getCost(0, 0) == FlowField.UNREACHABLE, "goal outside the atlas reachable");
+        atlas.updateCell(100, 100, false);
+        check(field.getCost(100, 100) == 0, "goal cost: " + field.getCost(100, 100));
+        check(field.getCost(0, 0) == 200, "cost: " + field.getCost(0, 0));
+        assertSame(atlas, field, 100, 100, "goal inside");
+    }
+
+    private static void matchesCompute(long seed) {
+        Random random = new Random(seed);
+        GridAtlas atlas = new GridAtlas(4);
+        int xGoal = random.nextInt(40) - 20;
+        int yGoal = random.nextInt(40) - 20;
+        FlowField field = new FlowField(atlas, xGoal, yGoal);
+        int radius = 4;
+        for (int step = 0; step < 300; step++) {
+            if (random.nextInt(10) == 0)
+                radius += 2;
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            atlas.updateCell(x, y, random.nextInt(3) != 0);
+            if (step % 5 == 0)
+                assertSame(atlas, field, xGoal, yGoal, "seed " + seed + " step " + step);
+        }
+    }
+
+    private static void assertSame(GridAtlas atlas, FlowField field, int xGoal, int yGoal, String where) {
+        FlowField fresh = new FlowField(atlas, xGoal, yGoal);
+        fresh.detach();
+        for (int x = atlas.xMin(); x <= atlas.xMax(); x++)
+            for (int y = atlas.yMin(); y <= atlas.yMax(); y++)
+                check(field.getCost(x, y) == fresh.getCost(x, y), where + ": cost at (" + x + ", " + y + ") " +
+                        field.getCost(x, y) + " != " + fresh.getCost(x, y));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Compares the counts kept by {@link FreeCellSampler} with the atlas, and checks that samples are
+ * free cells of the window asked for, while the atlas grows or its window moves.
+ */
+public class FreeCellSamplerTest {
+    public static void main(String[] args) {
+        for (long seed = 0; seed < 8; seed++) {
+            matchesAtlas(new GridAtlas(4), seed, false);
+            matchesAtlas(new RollingGridAtlas(4, 5, 5), seed, true);
+        }
+        System.out.println("FreeCellSamplerTest passed");
+    }
+
+    private static void matchesAtlas(GridAtlas atlas, long seed, boolean rolling) {
+        Random random = new Random(seed);
+        FreeCellSampler sampler = new FreeCellSampler(atlas);
+        int radius = 4;
+        for (int step = 0; step < 400; step++) {
+            if (rolling && random.nextInt(20) == 0)
+                ((RollingGridAtlas) atlas).recenter(random.nextInt(20) - 10, random.nextInt(20) - 10);
+            if (!rolling && random.nextInt(8) == 0)
+                radius += 3;
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            atlas.updateCell(x, y, random.nextInt(3) != 0);
+            if (step % 4 != 0)
+                continue;
+            String where = "seed " + seed + " step " + step + (rolling ? " rolling" : "");
+            long expected = 0;
+            for (int i = atlas.xMin(); i <= atlas.xMax(); i++)
+                for (int j = atlas.yMin(); j <= atlas.yMax(); j++)
+                    if (atlas.getCounterAt(i, j) == 0)
+                        expected++;
+            check(sampler.countFree() == expected, where + ": free " + sampler.countFree() + ", expected " + expected);
+            for (int k = 0; k < 20; k++) {
+                Optional<Point> p = sampler.sampleFree(random);
+                check(p.isPresent() && atlas.getCounterAt(p.get().getX(), p.get().getY()) == 0, where + ": sampled " + p);
+                int wx = x - random.nextInt(8);
+                int wy = y - random.nextInt(8);
+                p = sampler.sampleFree(random, wx, wy, 9, 9);
+                if (!p.isPresent()) {
+                    for (int i = wx; i < wx + 9; i++)
+                        for (int j = wy; j < wy + 9; j++)
+                            check(atlas.getCounterAt(i, j) != 0, where + ": free cell missed in window");
+                    continue;
+                }
+                Point q = p.get();
+                check(q.getX() >= wx && q.getX() < wx + 9 && q.getY() >= wy && q.getY() < wy + 9 &&
+                        atlas.getCounterAt(q.getX(), q.getY()) == 0, where + ": sampled " + q + " in window");
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
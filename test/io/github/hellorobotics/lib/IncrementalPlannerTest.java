@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the paths repaired by {@link IncrementalPlanner} with a breadth-first search over the
+ * atlas, while the atlas grows or its window moves.
+ */
+public class IncrementalPlannerTest {
+    public static void main(String[] args) {
+        goalComesInside();
+        for (long seed = 0; seed < 8; seed++) {
+            matchesSearch(new GridAtlas(4), seed, false);
+            matchesSearch(new RollingGridAtlas(4, 6, 6), seed, true);
+        }
+        System.out.println("IncrementalPlannerTest passed");
+    }
+
+    private static void goalComesInside() {
+        GridAtlas atlas = new GridAtlas(8);
+        IncrementalPlanner planner = new IncrementalPlanner(atlas, 0, 0, 100, 100);
+        check(!planner.replan(), "goal outside the atlas reachable");
+        atlas.updateCell(100, 100, false);
+        check(planner.replan(), "goal not reachable once inside");
+        check(planner.getPath().size() == 201, "path length: " + planner.getPath().size());
+    }
+
+    private static void matchesSearch(GridAtlas atlas, long seed, boolean rolling) {
+        Random random = new Random(seed);
+        int xGoal = random.nextInt(12) - 6;
+        int yGoal = random.nextInt(12) - 6;
+        int xStart = random.nextInt(12) - 6;
+        int yStart = random.nextInt(12) - 6;
+        IncrementalPlanner planner = new IncrementalPlanner(atlas, xStart, yStart, xGoal, yGoal);
+        int radius = 4;
+        for (int step = 0; step < 300; step++) {
+            if (rolling && random.nextInt(20) == 0)
+                ((RollingGridAtlas) atlas).recenter(random.nextInt(16) - 8, random.nextInt(16) - 8);
+            if (!rolling && random.nextInt(10) == 0)
+                radius += 2;
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            if (x != xGoal || y != yGoal)
+                atlas.updateCell(x, y, random.nextInt(3) != 0);
+            if (random.nextInt(10) == 0) {
+                List<Point> path = planner.getPath();
+                if (path.size() > 1) {
+                    xStart = path.get(1).getX();
+                    yStart = path.get(1).getY();
+                    planner.moveTo(xStart, yStart);
+                }
+            }
+            int expected = distance(atlas, xStart, yStart, xGoal, yGoal);
+            boolean reachable = planner.replan();
+            String where = "seed " + seed + " step " + step + (rolling ? " rolling" : "");
+            check(reachable == (expected >= 0), where + ": reachable " + reachable + ", expected " + expected);
+            if (reachable)
+                check(planner.getPath().size() - 1 == expected, where + ": path " + (planner.getPath().size() - 1) + ", expected " + expected);
+        }
+    }
+
+    // Steps from start to goal through free cells inside the atlas, -1 if there is no path.
+    static int distance(GridAtlas atlas, int xStart, int yStart, int xGoal, int yGoal) {
+        if (atlas.getCounterAt(xStart, yStart) < 0)
+            return -1;
+        HashMap<Long, Integer> seen = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        seen.put(GridAtlas.pack(xStart, yStart), 0);
+        queue.add(GridAtlas.pack(xStart, yStart));
+        int[][] d = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            long k = queue.poll();
+            int x = GridAtlas.unpackX(k);
+            int y = GridAtlas.unpackY(k);
+            if (x == xGoal && y == yGoal)
+                return seen.get(k);
+            for (int[] o : d) {
+                long n = GridAtlas.pack(x + o[0], y + o[1]);
+                if (atlas.getCounterAt(x + o[0], y + o[1]) == 0 && !seen.containsKey(n)) {
+                    seen.put(n, seen.get(k) + 1);
+                    queue.add(n);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
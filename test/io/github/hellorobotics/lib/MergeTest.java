@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Compares {@link GridAtlas#merge(GridAtlas, int, int, MergePolicy)} with merging cell by cell,
+ * for aligned and unaligned offsets, both geometries and policies with and without zero as
+ * identity, and checks the transitions reported to listeners.
+ */
+public class MergeTest {
+    public static void main(String[] args) {
+        MergePolicy replace = (dest, src) -> src;
+        MergePolicy halve = (dest, src) -> dest / 2 + src;
+        for (MergePolicy policy : new MergePolicy[]{MergePolicy.SUM, MergePolicy.MAX, replace, halve}) {
+            for (long seed = 0; seed < 6; seed++) {
+                matchesCellByCell(ChunkGeometry::of, policy, seed);
+                matchesCellByCell(ChunkGeometry::morton, policy, seed);
+            }
+        }
+        System.out.println("MergeTest passed");
+    }
+
+    private static void matchesCellByCell(IntFunction<ChunkGeometry> geometry, MergePolicy policy, long seed) {
+        Random random = new Random(seed);
+        GridAtlas dest = fill(new GridAtlas(geometry.apply(4)), random);
+        GridAtlas src = fill(new GridAtlas(geometry.apply(4)), random);
+        int dx = random.nextBoolean() ? 4 * (random.nextInt(9) - 4) : random.nextInt(41) - 20;
+        int dy = random.nextBoolean() ? 4 * (random.nextInt(9) - 4) : random.nextInt(41) - 20;
+        HashMap<Long, Integer> expected = new HashMap<>();
+        for (int x = Math.min(dest.xMin(), src.xMin() + dx); x <= Math.max(dest.xMax(), src.xMax() + dx); x++) {
+            for (int y = Math.min(dest.yMin(), src.yMin() + dy); y <= Math.max(dest.yMax(), src.yMax() + dy); y++) {
+                int before = Math.max(0, dest.getCounterAt(x, y));
+                int from = src.getCounterAt(x - dx, y - dy);
+                expected.put(GridAtlas.pack(x, y), from < 0 ? before : policy.merge(before, from));
+            }
+        }
+        Set<Long> blocked = new HashSet<>();
+        for (long k : expected.keySet())
+            if (dest.getCounterAt(GridAtlas.unpackX(k), GridAtlas.unpackY(k)) > 0)
+                blocked.add(k);
+        String where = "seed " + seed + " offset (" + dx + ", " + dy + ")";
+        dest.addCellListener((x, y, b) -> {
+            long k = GridAtlas.pack(x, y);
+            check(b ? blocked.add(k) : blocked.remove(k), where + ": bogus transition at (" + x + ", " + y + ")");
+        });
+        dest.merge(src, dx, dy, policy);
+        expected.forEach((k, v) -> {
+            int x = GridAtlas.unpackX(k);
+            int y = GridAtlas.unpackY(k);
+            check(dest.getCounterAt(x, y) == v, where + ": counter at (" + x + ", " + y + ") " + dest.getCounterAt(x, y) + " != " + v);
+            check(blocked.contains(k) == v > 0, where + ": transition missed at (" + x + ", " + y + ")");
+        });
+    }
+
+    private static GridAtlas fill(GridAtlas atlas, Random random) {
+        int xc = random.nextInt(20) - 10;
+        int yc = random.nextInt(20) - 10;
+        for (int i = 0; i < 150; i++)
+            atlas.updateCell(xc + random.nextInt(21) - 10, yc + random.nextInt(21) - 10, true);
+        return atlas;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
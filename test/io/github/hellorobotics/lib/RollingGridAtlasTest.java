@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.util.Random;
+
+/**
+ * Checks that consumers of a rolling atlas forget the cells its window drops, also when the
+ * window comes back to the same bounds.
+ */
+public class RollingGridAtlasTest {
+    public static void main(String[] args) {
+        windowComesBack();
+        flowFieldFollowsWindow(84);
+        flowFieldFollowsWindow(7);
+        System.out.println("RollingGridAtlasTest passed");
+    }
+
+    private static void windowComesBack() {
+        RollingGridAtlas atlas = new RollingGridAtlas(8, 4, 4);
+        for (int y = atlas.yMin(); y <= atlas.yMax(); y++)
+            atlas.updateCell(0, y, true);
+        Connectivity connectivity = new Connectivity(atlas);
+        FreeCellSampler sampler = new FreeCellSampler(atlas);
+        IncrementalPlanner planner = new IncrementalPlanner(atlas, -5, 0, 5, 0);
+        check(!connectivity.isReachable(-5, 0, 5, 0), "reachable through the wall");
+        check(sampler.countFree() == 992, "free cells: " + sampler.countFree());
+        check(!planner.replan(), "path through the wall");
+        atlas.recenter(1000, 1000);
+        atlas.recenter(0, 0);
+        check(atlas.getCounterAt(0, 0) == 0, "wall kept by the window");
+        check(connectivity.isReachable(-5, 0, 5, 0), "not reachable once the wall was dropped");
+        check(sampler.countFree() == 1024, "free cells: " + sampler.countFree());
+        check(planner.replan(), "no path once the wall was dropped");
+        check(planner.getPath().size() == 11, "path length: " + planner.getPath().size());
+    }
+
+    private static void flowFieldFollowsWindow(long seed) {
+        Random random = new Random(seed);
+        RollingGridAtlas atlas = new RollingGridAtlas(8, 4, 4);
+        FlowField field = new FlowField(atlas, 3, 3);
+        for (int step = 0; step < 200; step++) {
+            if (random.nextInt(10) == 0)
+                atlas.recenter(random.nextInt(24) - 12, random.nextInt(24) - 12);
+            int x = atlas.xMin() + random.nextInt(atlas.xMax() - atlas.xMin() + 1);
+            int y = atlas.yMin() + random.nextInt(atlas.yMax() - atlas.yMin() + 1);
+            if (x != 3 || y != 3)
+                atlas.updateCell(x, y, random.nextInt(3) != 0);
+            FlowField fresh = new FlowField(atlas, 3, 3);
+            fresh.detach();
+            for (int i = atlas.xMin(); i <= atlas.xMax(); i++)
+                for (int j = atlas.yMin(); j <= atlas.yMax(); j++)
+                    check(field.getCost(i, j) == fresh.getCost(i, j), "seed " + seed + " step " + step +
+                            " cost at (" + i + ", " + j + "): " + field.getCost(i, j) + " != " + fresh.getCost(i, j));
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Round trips frames of {@link TileEncoder} through {@link TileDecoder} and compares the replica
+ * with the source, including the transitions its listeners see.
+ */
+public class TileCodecTest {
+    public static void main(String[] args) throws IOException {
+        for (long seed = 0; seed < 8; seed++)
+            roundTrip(seed);
+        lateReplica();
+        System.out.println("TileCodecTest passed");
+    }
+
+    private static void roundTrip(long seed) throws IOException {
+        Random random = new Random(seed);
+        GridAtlas source = new GridAtlas(4);
+        GridAtlas replica = new GridAtlas(4);
+        TileEncoder encoder = new TileEncoder(source);
+        TileDecoder decoder = new TileDecoder(replica);
+        Set<Long> blocked = new HashSet<>();
+        String[] error = new String[1];
+        replica.addCellListener((x, y, b) -> {
+            long k = GridAtlas.pack(x, y);
+            if (b ? !blocked.add(k) : !blocked.remove(k))
+                error[0] = "bogus transition at (" + x + ", " + y + ") to " + b;
+        });
+        int radius = 4;
+        for (int step = 0; step < 300; step++) {
+            if (random.nextInt(10) == 0)
+                radius += 3;
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            for (int k = random.nextInt(4); k >= 0; k--)
+                source.updateCell(x, y, random.nextInt(3) != 0);
+            if (random.nextInt(40) == 0)
+                source.compact();
+            if (random.nextInt(5) != 0)
+                continue;
+            if (random.nextBoolean()) {
+                decoder.decode(encoder.encode());
+            } else {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                encoder.encode(Channels.newChannel(out));
+                check(decoder.decode(Channels.newChannel(new ByteArrayInputStream(out.toByteArray()))), "no frame read");
+            }
+            String where = "seed " + seed + " step " + step;
+            check(error[0] == null, where + ": " + error[0]);
+            assertSame(source, replica, where);
+            check(decoder.getVersion() == source.getVersion(), where + ": version " + decoder.getVersion());
+        }
+    }
+
+    private static void lateReplica() {
+        GridAtlas source = new GridAtlas(8);
+        for (int i = 0; i < 200; i++)
+            source.updateCell(i * 7 % 61 - 30, i * 13 % 47 - 20, true);
+        TileEncoder encoder = new TileEncoder(source);
+        encoder.encode();
+        GridAtlas replica = new GridAtlas(8);
+        encoder.reset();
+        ByteBuffer frame = encoder.encode();
+        new TileDecoder(replica).decode(frame);
+        check(!frame.hasRemaining(), "frame not consumed");
+        assertSame(source, replica, "late replica");
+    }
+
+    private static void assertSame(GridAtlas source, GridAtlas replica, String where) {
+        check(source.xMin() == replica.xMin() && source.xMax() == replica.xMax() &&
+                source.yMin() == replica.yMin() && source.yMax() == replica.yMax(), where + ": bounds differ");
+        for (int x = source.xMin(); x <= source.xMax(); x++)
+            for (int y = source.yMin(); y <= source.yMax(); y++)
+                check(source.getCounterAt(x, y) == replica.getCounterAt(x, y), where + ": counter at (" + x + ", " + y + ") " +
+                        source.getCounterAt(x, y) + " != " + replica.getCounterAt(x, y));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
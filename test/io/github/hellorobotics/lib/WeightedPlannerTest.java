@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 HelloRobotics.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package io.github.hellorobotics.lib;
+
+import io.github.hellorobotics.lib.util.Point;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares a {@link WeightedPlanner} kept across changes, with its cost cache, to one created
+ * for every query, while the atlas grows and decays.
+ */
+public class WeightedPlannerTest {
+    public static void main(String[] args) {
+        for (long seed = 0; seed < 6; seed++)
+            matchesFreshPlanner(seed);
+        System.out.println("WeightedPlannerTest passed");
+    }
+
+    private static void matchesFreshPlanner(long seed) {
+        Random random = new Random(seed);
+        GridAtlas atlas = new GridAtlas(4);
+        atlas.setDecay(DecayPolicy.linear(1));
+        CostFunction cost = CostFunction.linear(0.5);
+        WeightedPlanner planner = new WeightedPlanner(atlas, cost, 4);
+        int radius = 6;
+        for (int step = 0; step < 200; step++) {
+            if (random.nextInt(10) == 0)
+                radius += 2;
+            if (random.nextInt(8) == 0)
+                atlas.advanceEpoch();
+            int x = random.nextInt(2 * radius + 1) - radius;
+            int y = random.nextInt(2 * radius + 1) - radius;
+            for (int k = random.nextInt(5); k >= 0; k--)
+                atlas.updateCell(x, y, random.nextInt(4) != 0);
+            int xs = random.nextInt(2 * radius + 1) - radius;
+            int ys = random.nextInt(2 * radius + 1) - radius;
+            int xg = random.nextInt(2 * radius + 1) - radius;
+            int yg = random.nextInt(2 * radius + 1) - radius;
+            List<Point> path = planner.plan(xs, ys, xg, yg);
+            WeightedPlanner fresh = new WeightedPlanner(atlas, cost, 4);
+            List<Point> expected = fresh.plan(xs, ys, xg, yg);
+            String where = "seed " + seed + " step " + step;
+            check(planner.getPathCost() == fresh.getPathCost(), where + ": cost " + planner.getPathCost() + " != " + fresh.getPathCost());
+            check(path.isEmpty() == expected.isEmpty(), where + ": path found by one planner only");
+            if (!path.isEmpty())
+                check(path.get(0).equals(new Point(xs, ys)) && path.get(path.size() - 1).equals(new Point(xg, yg)),
+                        where + ": path does not join start and goal");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}